@@ -1,27 +1,39 @@
 package com.openclassrooms.starterjwt.controllers;
 
+import java.util.concurrent.RejectedExecutionException;
+
 import javax.validation.Valid;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.openclassrooms.starterjwt.models.User;
 import com.openclassrooms.starterjwt.payload.request.LoginRequest;
+import com.openclassrooms.starterjwt.payload.request.RefreshTokenRequest;
 import com.openclassrooms.starterjwt.payload.request.SignupRequest;
 import com.openclassrooms.starterjwt.payload.response.JwtResponse;
 import com.openclassrooms.starterjwt.payload.response.MessageResponse;
 import com.openclassrooms.starterjwt.repository.UserRepository;
+import com.openclassrooms.starterjwt.security.jwt.JwtClaims;
 import com.openclassrooms.starterjwt.security.jwt.JwtUtils;
+import com.openclassrooms.starterjwt.security.jwt.JwtValidationResult;
+import com.openclassrooms.starterjwt.security.jwt.TokenRevocationIndex;
+import com.openclassrooms.starterjwt.security.services.AuthenticationExecutor;
 import com.openclassrooms.starterjwt.security.services.UserDetailsImpl;
+import com.openclassrooms.starterjwt.security.services.UserDetailsServiceImpl;
 
 @CrossOrigin(origins = "*", maxAge = 3600)
 @RestController
@@ -31,39 +43,85 @@ public class AuthController {
     private final JwtUtils jwtUtils;
     private final PasswordEncoder passwordEncoder;
     private final UserRepository userRepository;
+    private final AuthenticationExecutor authenticationExecutor;
+    private final UserDetailsServiceImpl userDetailsService;
+    private final TokenRevocationIndex tokenRevocationIndex;
 
     AuthController(AuthenticationManager authenticationManager,
             PasswordEncoder passwordEncoder,
             JwtUtils jwtUtils,
-            UserRepository userRepository) {
+            UserRepository userRepository,
+            AuthenticationExecutor authenticationExecutor,
+            UserDetailsServiceImpl userDetailsService,
+            TokenRevocationIndex tokenRevocationIndex) {
         this.authenticationManager = authenticationManager;
         this.jwtUtils = jwtUtils;
         this.passwordEncoder = passwordEncoder;
         this.userRepository = userRepository;
+        this.authenticationExecutor = authenticationExecutor;
+        this.userDetailsService = userDetailsService;
+        this.tokenRevocationIndex = tokenRevocationIndex;
     }
 
     @PostMapping("/login")
     public ResponseEntity<?> authenticateUser(@Valid @RequestBody LoginRequest loginRequest) {
 
-        Authentication authentication = authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(loginRequest.getEmail(), loginRequest.getPassword()));
+        Authentication authentication;
+        try {
+            authentication = authenticationExecutor.authenticate(() -> authenticationManager.authenticate(
+                    new UsernamePasswordAuthenticationToken(loginRequest.getEmail(), loginRequest.getPassword())));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity
+                    .status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(new MessageResponse("Error: Too many login attempts, please retry shortly"));
+        }
 
         SecurityContextHolder.getContext().setAuthentication(authentication);
         String jwt = jwtUtils.generateJwtToken(authentication);
         UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
 
-        boolean isAdmin = false;
-        User user = this.userRepository.findByEmail(userDetails.getUsername()).orElse(null);
-        if (user != null) {
-            isAdmin = user.isAdmin();
+        return ResponseEntity.ok(buildJwtResponse(jwt, userDetails));
+    }
+
+    /**
+     * Exchanges a refresh token for a new access and refresh token pair. Each refresh token
+     * can be redeemed once: it is revoked as part of the exchange.
+     */
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refreshToken(@Valid @RequestBody RefreshTokenRequest refreshRequest) {
+        JwtValidationResult validation = jwtUtils.validate(refreshRequest.getRefreshToken());
+        if (!validation.isValid() || !validation.getClaims().isRefreshToken()) {
+            return invalidRefreshToken();
         }
 
-        return ResponseEntity.ok(new JwtResponse(jwt,
-                userDetails.getId(),
-                userDetails.getUsername(),
-                userDetails.getFirstName(),
-                userDetails.getLastName(),
-                isAdmin));
+        JwtClaims claims = validation.getClaims();
+        UserDetailsImpl userDetails;
+        try {
+            userDetails = (UserDetailsImpl) userDetailsService.loadUserByUsername(claims.getSubject());
+        } catch (UsernameNotFoundException e) {
+            return invalidRefreshToken();
+        }
+
+        if (!userDetails.getId().equals(claims.getId())
+                || !tokenRevocationIndex.revoke(claims.getTokenId(), claims.getExpiration())) {
+            return invalidRefreshToken();
+        }
+
+        return ResponseEntity.ok(buildJwtResponse(jwtUtils.generateJwtToken(userDetails), userDetails));
+    }
+
+    @PostMapping("/logout")
+    public ResponseEntity<?> logout(@RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+            @RequestBody(required = false) RefreshTokenRequest refreshRequest) {
+        if (authorization != null && authorization.startsWith("Bearer ")) {
+            revoke(authorization.substring(7));
+        }
+        if (refreshRequest != null && refreshRequest.getRefreshToken() != null) {
+            revoke(refreshRequest.getRefreshToken());
+        }
+
+        return ResponseEntity.ok(new MessageResponse("User logged out successfully!"));
     }
 
     @PostMapping("/register")
@@ -85,4 +143,27 @@ public class AuthController {
 
         return ResponseEntity.ok(new MessageResponse("User registered successfully!"));
     }
+
+    private JwtResponse buildJwtResponse(String jwt, UserDetailsImpl userDetails) {
+        return new JwtResponse(jwt,
+                jwtUtils.generateRefreshToken(userDetails),
+                userDetails.getId(),
+                userDetails.getUsername(),
+                userDetails.getFirstName(),
+                userDetails.getLastName(),
+                Boolean.TRUE.equals(userDetails.getAdmin()));
+    }
+
+    private void revoke(String token) {
+        JwtValidationResult validation = jwtUtils.validate(token);
+        if (validation.isValid()) {
+            tokenRevocationIndex.revoke(validation.getClaims().getTokenId(), validation.getClaims().getExpiration());
+        }
+    }
+
+    private ResponseEntity<MessageResponse> invalidRefreshToken() {
+        return ResponseEntity
+                .status(HttpStatus.UNAUTHORIZED)
+                .body(new MessageResponse("Error: Invalid refresh token"));
+    }
 }
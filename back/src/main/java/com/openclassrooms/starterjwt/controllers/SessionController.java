@@ -1,15 +1,33 @@
 package com.openclassrooms.starterjwt.controllers;
 
 
+import com.openclassrooms.starterjwt.dto.ResourceVersion;
 import com.openclassrooms.starterjwt.dto.SessionDto;
+import com.openclassrooms.starterjwt.dto.SessionPageDto;
+import com.openclassrooms.starterjwt.dto.SessionPatchDto;
 import com.openclassrooms.starterjwt.mapper.SessionMapper;
 import com.openclassrooms.starterjwt.models.Session;
+import com.openclassrooms.starterjwt.services.ResponseBodyCache;
+import com.openclassrooms.starterjwt.services.SessionBulkService;
+import com.openclassrooms.starterjwt.services.SessionCursor;
+import com.openclassrooms.starterjwt.services.SessionListSnapshot;
 import com.openclassrooms.starterjwt.services.SessionService;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.data.domain.Slice;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
 import java.util.List;
 
 @CrossOrigin(origins = "*", maxAge = 3600)
@@ -19,34 +37,93 @@ import java.util.List;
 public class SessionController {
     private final SessionMapper sessionMapper;
     private final SessionService sessionService;
+    private final SessionBulkService sessionBulkService;
+    private final SessionListSnapshot sessionListSnapshot;
+    private final ResponseBodyCache responseBodyCache;
 
 
     public SessionController(SessionService sessionService,
-                             SessionMapper sessionMapper) {
+                             SessionMapper sessionMapper,
+                             SessionBulkService sessionBulkService,
+                             SessionListSnapshot sessionListSnapshot,
+                             ResponseBodyCache responseBodyCache) {
         this.sessionMapper = sessionMapper;
         this.sessionService = sessionService;
+        this.sessionBulkService = sessionBulkService;
+        this.sessionListSnapshot = sessionListSnapshot;
+        this.responseBodyCache = responseBodyCache;
     }
 
+    /**
+     * Answers 304 from the version of the session alone when the client already holds it. The version is read
+     * before the session, so a concurrent change can leave the tag older than the body but never newer.
+     * A session already encoded for the tag read is written from the body cache, without reading it again.
+     */
     @GetMapping("/{id}")
-    public ResponseEntity<?> findById(@PathVariable("id") String id) {
+    public ResponseEntity<?> findById(@PathVariable("id") String id, WebRequest request) {
         try {
-            Session session = this.sessionService.getById(Long.valueOf(id));
+            Long sessionId = Long.valueOf(id);
+            ResourceVersion version = this.sessionService.getVersion(sessionId);
+
+            if (version == null) {
+                return ResponseEntity.notFound().build();
+            }
+            if (ResponseBodyCache.checkNotModified(request, version.getETag(), version.getLastModifiedMillis())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING).build();
+            }
+
+            ResponseBodyCache.Body session = this.responseBodyCache.get(
+                    ResponseBodyCache.key(ResponseBodyCache.SESSION, sessionId), version.getETag(),
+                    () -> this.sessionService.getById(sessionId));
 
             if (session == null) {
                 return ResponseEntity.notFound().build();
             }
 
-            return ResponseEntity.ok().body(this.sessionMapper.toDto(session));
+            return session.toResponse(request);
         } catch (NumberFormatException e) {
             return ResponseEntity.badRequest().build();
         }
     }
 
+    /**
+     * Without parameters, returns every session as a plain list, written from the in-memory snapshot
+     * when one is available. With any of size, cursor, from or to, returns one page ordered by date and id
+     * with the cursor of the next page; {@code to} is exclusive. Either way the response carries the entity
+     * tag of the whole collection and is answered with 304 while no session changed. No Last-Modified is sent:
+     * a deletion does not move the last update time.
+     */
     @GetMapping()
-    public ResponseEntity<?> findAll() {
-        List<Session> sessions = this.sessionService.findAll();
+    public ResponseEntity<?> findAll(@RequestParam(value = "size", required = false) Integer size,
+                                     @RequestParam(value = "cursor", required = false) String cursor,
+                                     @RequestParam(value = "from", required = false)
+                                     @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date from,
+                                     @RequestParam(value = "to", required = false)
+                                     @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date to,
+                                     WebRequest request) {
+        boolean wholeList = size == null && cursor == null && from == null && to == null;
+        SessionListSnapshot.Snapshot snapshot = wholeList ? this.sessionListSnapshot.current() : null;
+        if (snapshot != null) {
+            if (request.checkNotModified(snapshot.getETag())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+            }
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(snapshot.getBody());
+        }
+
+        if (request.checkNotModified(this.sessionService.getCollectionVersion().getETag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+        }
+
+        if (wholeList) {
+            return ResponseEntity.ok().body(this.sessionService.findAll());
+        }
+
+        Slice<SessionDto> page = this.sessionService.findPage(from, to, SessionCursor.parse(cursor), size);
+        List<SessionDto> sessions = page.getContent();
+        String nextCursor = page.hasNext() ? SessionCursor.of(sessions.get(sessions.size() - 1)).encode() : null;
 
-        return ResponseEntity.ok().body(this.sessionMapper.toDto(sessions));
+        return ResponseEntity.ok().body(new SessionPageDto(sessions, nextCursor));
     }
 
     @PostMapping()
@@ -59,6 +136,24 @@ public class SessionController {
         return ResponseEntity.ok().body(this.sessionMapper.toDto(session));
     }
 
+    /**
+     * Imports a JSON array of new sessions, read as it arrives, and reports the items that were refused.
+     */
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> importSessions(InputStream body) throws IOException {
+        return ResponseEntity.ok().body(this.sessionBulkService.importSessions(body));
+    }
+
+    /**
+     * Streams every session with its participants as a JSON array, without loading them all first.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportSessions() {
+        StreamingResponseBody body = this.sessionBulkService::exportSessions;
+
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
     @PutMapping("{id}")
     public ResponseEntity<?> update(@PathVariable("id") String id, @Valid @RequestBody SessionDto sessionDto) {
         try {
@@ -67,15 +162,31 @@ public class SessionController {
             return ResponseEntity.ok().body(this.sessionMapper.toDto(session));
         } catch (NumberFormatException e) {
             return ResponseEntity.badRequest().build();
+        } catch (ConcurrencyFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    /**
+     * Changes only the fields present in the body and answers with the session as stored afterwards.
+     */
+    @PatchMapping("{id}")
+    public ResponseEntity<?> patch(@PathVariable("id") String id, @Valid @RequestBody SessionPatchDto patch) {
+        try {
+            this.sessionService.patch(Long.parseLong(id), patch);
+
+            return ResponseEntity.ok().body(this.sessionService.getById(Long.parseLong(id)));
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (ConcurrencyFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         }
     }
 
     @DeleteMapping("{id}")
     public ResponseEntity<?> save(@PathVariable("id") String id) {
         try {
-            Session session = this.sessionService.getById(Long.valueOf(id));
-
-            if (session == null) {
+            if (!this.sessionService.exists(Long.valueOf(id))) {
                 return ResponseEntity.notFound().build();
             }
 
@@ -94,6 +205,8 @@ public class SessionController {
             return ResponseEntity.ok().build();
         } catch (NumberFormatException e) {
             return ResponseEntity.badRequest().build();
+        } catch (ConcurrencyFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         }
     }
 
@@ -102,6 +215,30 @@ public class SessionController {
         try {
             this.sessionService.noLongerParticipate(Long.parseLong(id), Long.parseLong(userId));
 
+            return ResponseEntity.ok().build();
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (ConcurrencyFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    @PostMapping("{id}/waitlist/{userId}")
+    public ResponseEntity<?> joinWaitlist(@PathVariable("id") String id, @PathVariable("userId") String userId) {
+        try {
+            this.sessionService.joinWaitlist(Long.parseLong(id), Long.parseLong(userId));
+
+            return ResponseEntity.ok().build();
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @DeleteMapping("{id}/waitlist/{userId}")
+    public ResponseEntity<?> leaveWaitlist(@PathVariable("id") String id, @PathVariable("userId") String userId) {
+        try {
+            this.sessionService.leaveWaitlist(Long.parseLong(id), Long.parseLong(userId));
+
             return ResponseEntity.ok().build();
         } catch (NumberFormatException e) {
             return ResponseEntity.badRequest().build();
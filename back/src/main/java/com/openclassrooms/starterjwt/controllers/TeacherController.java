@@ -1,11 +1,15 @@
 package com.openclassrooms.starterjwt.controllers;
 
+import com.openclassrooms.starterjwt.dto.ResourceVersion;
 import com.openclassrooms.starterjwt.mapper.TeacherMapper;
 import com.openclassrooms.starterjwt.models.Teacher;
+import com.openclassrooms.starterjwt.services.ResponseBodyCache;
 import com.openclassrooms.starterjwt.services.TeacherService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import java.util.List;
+import org.springframework.web.context.request.WebRequest;
 
 @CrossOrigin(origins = "*", maxAge = 3600)
 @RestController
@@ -13,33 +17,64 @@ import java.util.List;
 public class TeacherController {
     private final TeacherMapper teacherMapper;
     private final TeacherService teacherService;
+    private final ResponseBodyCache responseBodyCache;
 
 
     public TeacherController(TeacherService teacherService,
-                             TeacherMapper teacherMapper) {
+                             TeacherMapper teacherMapper,
+                             ResponseBodyCache responseBodyCache) {
         this.teacherMapper = teacherMapper;
         this.teacherService = teacherService;
+        this.responseBodyCache = responseBodyCache;
     }
 
+    /**
+     * Answers 304 from the update time of the teacher alone when the client already holds it, and otherwise
+     * writes the body encoded for that version.
+     */
     @GetMapping("/{id}")
-    public ResponseEntity<?> findById(@PathVariable("id") String id) {
+    public ResponseEntity<?> findById(@PathVariable("id") String id, WebRequest request) {
         try {
-            Teacher teacher = this.teacherService.findById(Long.valueOf(id));
+            Long teacherId = Long.valueOf(id);
+            ResourceVersion version = this.teacherService.getVersion(teacherId);
+
+            if (version == null) {
+                return ResponseEntity.notFound().build();
+            }
+            if (ResponseBodyCache.checkNotModified(request, version.getETag(), version.getLastModifiedMillis())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING).build();
+            }
+
+            ResponseBodyCache.Body teacher = this.responseBodyCache.get(
+                    ResponseBodyCache.key(ResponseBodyCache.TEACHER, teacherId), version.getETag(), () -> {
+                        Teacher found = this.teacherService.findById(teacherId);
+                        return found != null ? this.teacherMapper.toDto(found) : null;
+                    });
 
             if (teacher == null) {
                 return ResponseEntity.notFound().build();
             }
 
-            return ResponseEntity.ok().body(this.teacherMapper.toDto(teacher));
+            return teacher.toResponse(request);
         } catch (NumberFormatException e) {
             return ResponseEntity.badRequest().build();
         }
     }
 
+    /**
+     * Answers 304 while no teacher was added, changed or removed. No Last-Modified is sent: a deletion
+     * does not move the last update time.
+     */
     @GetMapping()
-    public ResponseEntity<?> findAll() {
-        List<Teacher> teachers = this.teacherService.findAll();
+    public ResponseEntity<?> findAll(WebRequest request) {
+        String eTag = this.teacherService.getCollectionVersion().getETag();
+        if (ResponseBodyCache.checkNotModified(request, eTag, -1)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING).build();
+        }
 
-        return ResponseEntity.ok().body(this.teacherMapper.toDto(teachers));
+        return this.responseBodyCache.get(ResponseBodyCache.key(ResponseBodyCache.TEACHER, "all"), eTag,
+                () -> this.teacherMapper.toDto(this.teacherService.findAll())).toResponse(request);
     }
 }
@@ -1,13 +1,16 @@
 package com.openclassrooms.starterjwt.controllers;
 
+import com.openclassrooms.starterjwt.dto.ResourceVersion;
 import com.openclassrooms.starterjwt.mapper.UserMapper;
 import com.openclassrooms.starterjwt.models.User;
+import com.openclassrooms.starterjwt.services.ResponseBodyCache;
 import com.openclassrooms.starterjwt.services.UserService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.Objects;
 
@@ -17,24 +20,42 @@ import java.util.Objects;
 public class UserController {
     private final UserMapper userMapper;
     private final UserService userService;
+    private final ResponseBodyCache responseBodyCache;
 
 
     public UserController(UserService userService,
-                             UserMapper userMapper) {
+                             UserMapper userMapper,
+                             ResponseBodyCache responseBodyCache) {
         this.userMapper = userMapper;
         this.userService = userService;
+        this.responseBodyCache = responseBodyCache;
     }
 
+    /**
+     * Writes the body already encoded for the last update of the user when there is one. Only the version
+     * is read to find out; the user is loaded and mapped when the body has to be encoded again.
+     */
     @GetMapping("/{id}")
-    public ResponseEntity<?> findById(@PathVariable("id") String id) {
+    public ResponseEntity<?> findById(@PathVariable("id") String id, WebRequest request) {
         try {
-            User user = this.userService.findById(Long.valueOf(id));
+            Long userId = Long.valueOf(id);
+            ResourceVersion version = this.userService.getVersion(userId);
+
+            if (version == null) {
+                return ResponseEntity.notFound().build();
+            }
+
+            ResponseBodyCache.Body user = this.responseBodyCache.get(
+                    ResponseBodyCache.key(ResponseBodyCache.USER, userId), version.getETag(), () -> {
+                        User loaded = this.userService.findById(userId);
+                        return loaded != null ? this.userMapper.toDto(loaded) : null;
+                    });
 
             if (user == null) {
                 return ResponseEntity.notFound().build();
             }
 
-            return ResponseEntity.ok().body(this.userMapper.toDto(user));
+            return user.toResponse(request);
         } catch (NumberFormatException e) {
             return ResponseEntity.badRequest().build();
         }
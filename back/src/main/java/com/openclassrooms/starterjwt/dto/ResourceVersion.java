@@ -0,0 +1,50 @@
+package com.openclassrooms.starterjwt.dto;
+
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.StringJoiner;
+
+/**
+ * Validators of a resource for conditional GETs, built by the repositories from a few columns so that
+ * an unchanged resource can be answered without being loaded. The entity tag is strong: it is made of
+ * values that change whenever the representation does, such as the id and version of a session, or the
+ * row count and highest update time of a collection.
+ */
+@Getter
+public class ResourceVersion {
+    private final String eTag;
+
+    private final LocalDateTime lastModified;
+
+    public ResourceVersion(Long key, Long version, LocalDateTime lastModified) {
+        this(lastModified, key, version);
+    }
+
+    public ResourceVersion(Long key, LocalDateTime lastModified) {
+        this(lastModified, key);
+    }
+
+    private ResourceVersion(LocalDateTime lastModified, Long... parts) {
+        StringJoiner tag = new StringJoiner("-", "\"", "\"");
+        for (Long part : parts) {
+            tag.add(Long.toHexString(part != null ? part : 0));
+        }
+        if (lastModified != null) {
+            tag.add(Long.toHexString(lastModified.toEpochSecond(ZoneOffset.UTC))
+                    + "." + Integer.toHexString(lastModified.getNano()));
+        }
+        this.eTag = tag.toString();
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Last update time in epoch milliseconds, or -1 when unknown, as expected by
+     * {@link org.springframework.web.context.request.WebRequest#checkNotModified(String, long)}.
+     */
+    public long getLastModifiedMillis() {
+        return this.lastModified != null ? this.lastModified.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : -1;
+    }
+}
@@ -4,6 +4,7 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
@@ -33,7 +34,23 @@ public class SessionDto {
 
     private List<Long> users;
 
+    @Min(1)
+    private Integer capacity;
+
+    /**
+     * Version of the session this representation was read from; sent back on update to detect concurrent edits.
+     */
+    private Long version;
+
     private LocalDateTime createdAt;
 
     private LocalDateTime updatedAt;
+
+    /**
+     * Used by the JPQL constructor expressions of the read queries; participants are filled in afterwards.
+     */
+    public SessionDto(Long id, String name, Date date, Long teacher_id, String description, Integer capacity,
+                      Long version, LocalDateTime createdAt, LocalDateTime updatedAt) {
+        this(id, name, date, teacher_id, description, null, capacity, version, createdAt, updatedAt);
+    }
 }
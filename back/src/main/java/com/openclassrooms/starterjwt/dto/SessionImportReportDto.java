@@ -0,0 +1,35 @@
+package com.openclassrooms.starterjwt.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk import. Failures are counted in full but only the first ones are detailed,
+ * so the report stays small whatever the size of the imported file.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SessionImportReportDto {
+    private int imported;
+
+    private int failed;
+
+    private List<ItemError> errors = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ItemError {
+        /**
+         * Position of the item in the imported array, starting at 0.
+         */
+        private int index;
+
+        private String message;
+    }
+}
@@ -0,0 +1,40 @@
+package com.openclassrooms.starterjwt.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.Pattern;
+import javax.validation.constraints.Size;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Fields to change on a session; the fields left null keep their current value.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SessionPatchDto {
+    @Size(max = 50)
+    @Pattern(regexp = ".*\\S.*")
+    private String name;
+
+    private Date date;
+
+    private Long teacher_id;
+
+    @Size(max = 2500)
+    private String description;
+
+    @Min(1)
+    private Integer capacity;
+
+    private List<Long> users;
+
+    /**
+     * Version the changes were made on; when given, the patch is refused if the session changed since.
+     */
+    private Long version;
+}
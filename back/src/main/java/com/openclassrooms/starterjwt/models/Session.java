@@ -3,11 +3,15 @@ package com.openclassrooms.starterjwt.models;
 
 import lombok.*;
 import lombok.experimental.Accessors;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.UpdateTimestamp;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 
 import javax.persistence.*;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
@@ -15,9 +19,17 @@ import java.time.LocalDateTime;
 import java.util.Date;
 import java.util.List;
 
+/**
+ * Cached read-write: sessions change on every booking, so cached copies are locked while a transaction
+ * changes them. The native seat updates of the repository declare the SESSIONS table, so they only
+ * invalidate this region, not the users or the teachers.
+ */
 @Entity
-@Table(name = "SESSIONS")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "sessions")
+@Table(name = "SESSIONS", indexes = @Index(name = "idx_sessions_date_id", columnList = "date, id"))
 @EntityListeners(AuditingEntityListener.class)
+@DynamicUpdate
 @Data
 @Accessors(chain = true)
 @EqualsAndHashCode(of = {"id"})
@@ -45,13 +57,34 @@ public class Session {
     @JoinColumn(name = "teacher_id", referencedColumnName = "id")
     private Teacher teacher;
 
-    @ManyToMany(fetch = FetchType.EAGER)
+    @ManyToMany(fetch = FetchType.LAZY)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "sessionParticipants")
     @JoinTable(
             name = "PARTICIPATE",
             joinColumns = @JoinColumn( name = "session_id" ),
-            inverseJoinColumns = @JoinColumn( name = "user_id" ) )
+            inverseJoinColumns = @JoinColumn( name = "user_id" ),
+            uniqueConstraints = @UniqueConstraint(name = "uk_participate_session_user", columnNames = {"session_id", "user_id"}) )
     private List<User> users;
 
+    /**
+     * Maximum number of participants, or null when the session is not limited.
+     */
+    @Min(1)
+    private Integer capacity;
+
+    /**
+     * Number of PARTICIPATE rows of the session, kept in step by the booking statements so that a
+     * seat can be claimed with one conditional update.
+     */
+    @Column(name = "participant_count", nullable = false)
+    private int participantCount;
+
+    /**
+     * Bumped by every write, the booking statements included, so that an edit based on a stale read is refused.
+     */
+    @Version
+    private Long version;
+
     @CreatedDate
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
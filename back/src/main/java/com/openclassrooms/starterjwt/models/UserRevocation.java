@@ -0,0 +1,32 @@
+package com.openclassrooms.starterjwt.models;
+
+import lombok.*;
+import lombok.experimental.Accessors;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.time.LocalDateTime;
+
+/**
+ * A user whose tokens must no longer be trusted. Kept apart from USERS so that it outlives a deleted user;
+ * it is only needed until the tokens issued before it have expired.
+ */
+@Entity
+@Table(name = "USER_REVOCATIONS",
+        indexes = @Index(name = "idx_user_revocations_revoked_at", columnList = "revoked_at"))
+@Data
+@Accessors(chain = true)
+@EqualsAndHashCode(of = {"userId"})
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class UserRevocation {
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @NotNull
+    @Column(name = "revoked_at")
+    private LocalDateTime revokedAt;
+}
@@ -7,6 +7,7 @@ import lombok.Setter;
 @Setter
 public class JwtResponse {
   private String token;
+  private String refreshToken;
   private String type = "Bearer";
   private Long id;
   private String username;
@@ -23,4 +24,9 @@ public class JwtResponse {
     this.username = username;
     this.admin = admin;
   }
+
+  public JwtResponse(String accessToken, String refreshToken, Long id, String username, String firstName, String lastName, Boolean admin) {
+    this(accessToken, id, username, firstName, lastName, admin);
+    this.refreshToken = refreshToken;
+  }
 }
@@ -1,9 +1,144 @@
 package com.openclassrooms.starterjwt.repository;
 
+import com.openclassrooms.starterjwt.dto.ResourceVersion;
+import com.openclassrooms.starterjwt.dto.SessionDto;
 import com.openclassrooms.starterjwt.models.Session;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import static org.hibernate.annotations.QueryHints.NATIVE_SPACES;
+
 @Repository
 public interface SessionRepository  extends JpaRepository<Session, Long> {
+
+    String SESSION_DTO = "select new com.openclassrooms.starterjwt.dto.SessionDto("
+            + "s.id, s.name, s.date, s.teacher.id, s.description, s.capacity, s.version, s.createdAt, s.updatedAt)"
+            + " from Session s";
+
+    /**
+     * Read path for the session endpoints: the scalar columns straight into DTOs, without managed entities.
+     * Participants come from {@link #findAllParticipantIds()} or {@link #findParticipantIds(Collection)}.
+     */
+    @Query(SESSION_DTO)
+    List<SessionDto> findAllDtos();
+
+    @Query("select s.version from Session s where s.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    /**
+     * Validators of one session. Bookings bump the version too, so it covers the participants.
+     */
+    @Query("select new com.openclassrooms.starterjwt.dto.ResourceVersion(s.id, s.version, s.updatedAt)"
+            + " from Session s where s.id = :id")
+    Optional<ResourceVersion> findResourceVersionById(@Param("id") Long id);
+
+    /**
+     * Validators of the whole collection: the row count catches deletions, and the sum of the versions
+     * moves on every change to any session.
+     */
+    @Query("select new com.openclassrooms.starterjwt.dto.ResourceVersion(count(s), sum(s.version), max(s.updatedAt))"
+            + " from Session s")
+    ResourceVersion findCollectionVersion();
+
+    @Query(SESSION_DTO + " where s.id = :id")
+    Optional<SessionDto> findDtoById(@Param("id") Long id);
+
+    @Query(SESSION_DTO + " where s.id in :ids order by s.date, s.id")
+    List<SessionDto> findDtosByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * (session id, user id) pairs read from the join table alone.
+     */
+    @Query(value = "select session_id, user_id from PARTICIPATE", nativeQuery = true)
+    List<Object[]> findAllParticipantIds();
+
+    @Query(value = "select session_id, user_id from PARTICIPATE where session_id in (:ids)", nativeQuery = true)
+    List<Object[]> findParticipantIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Ids of the first page of sessions in [from, to), read from the (date, id) index alone.
+     * The page size comes from the pageable.
+     */
+    @Query("select s.id from Session s where s.date >= :from and s.date < :to order by s.date, s.id")
+    List<Long> findPageIds(@Param("from") Date from, @Param("to") Date to, Pageable pageable);
+
+    /**
+     * Ids of the next page of sessions in [from, to), seeking past the (date, id) position of the
+     * previous page instead of skipping an offset.
+     */
+    @Query("select s.id from Session s where s.date >= :from and s.date < :to"
+            + " and (s.date > :afterDate or (s.date = :afterDate and s.id > :afterId))"
+            + " order by s.date, s.id")
+    List<Long> findPageIdsAfter(@Param("from") Date from,
+                                @Param("to") Date to,
+                                @Param("afterDate") Date afterDate,
+                                @Param("afterId") Long afterId,
+                                Pageable pageable);
+
+    /**
+     * True when the session has a capacity and every seat is taken.
+     */
+    @Query("select case when count(s) > 0 then true else false end from Session s"
+            + " where s.id = :id and s.capacity is not null and s.participantCount >= s.capacity")
+    boolean isFull(@Param("id") Long id);
+
+    @Query(value = "select count(*) from PARTICIPATE where session_id = :sessionId and user_id = :userId", nativeQuery = true)
+    int countParticipant(@Param("sessionId") Long sessionId, @Param("userId") Long userId);
+
+    @Query(value = "select count(*) from PARTICIPATE where session_id = :sessionId", nativeQuery = true)
+    int countParticipants(@Param("sessionId") Long sessionId);
+
+    /**
+     * Claims a seat: increments the participant count only while it is below the capacity.
+     * The update locks the session row, so concurrent bookings of the same session are serialized
+     * until the surrounding transaction ends. Returns 0 when the session is full or does not exist.
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "SESSIONS"))
+    @Query(value = "update SESSIONS set participant_count = participant_count + 1, version = version + 1,"
+            + " updated_at = current_timestamp"
+            + " where id = :sessionId and (capacity is null or participant_count < capacity)",
+            nativeQuery = true)
+    int claimSeat(@Param("sessionId") Long sessionId);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "SESSIONS"))
+    @Query(value = "update SESSIONS set participant_count = participant_count - 1, version = version + 1,"
+            + " updated_at = current_timestamp"
+            + " where id = :sessionId",
+            nativeQuery = true)
+    int releaseSeat(@Param("sessionId") Long sessionId);
+
+    /**
+     * Adds one participation row, only if the session and the user exist and the pair is not already there.
+     * Returns the number of inserted rows: 0 means a missing session, a missing user or a duplicate.
+     * The cached participants of the session are not cleared by this statement, see
+     * {@link com.openclassrooms.starterjwt.services.SessionParticipantsCache}.
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "PARTICIPATE"))
+    @Query(value = "insert into PARTICIPATE (session_id, user_id)"
+            + " select s.id, u.id from SESSIONS s, USERS u where s.id = :sessionId and u.id = :userId"
+            + " and not exists (select 1 from PARTICIPATE p where p.session_id = s.id and p.user_id = u.id)",
+            nativeQuery = true)
+    int addParticipant(@Param("sessionId") Long sessionId, @Param("userId") Long userId);
+
+    /**
+     * Removes one participation row. Returns the number of deleted rows: 0 means the user did not participate.
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "PARTICIPATE"))
+    @Query(value = "delete from PARTICIPATE where session_id = :sessionId and user_id = :userId", nativeQuery = true)
+    int removeParticipant(@Param("sessionId") Long sessionId, @Param("userId") Long userId);
 }
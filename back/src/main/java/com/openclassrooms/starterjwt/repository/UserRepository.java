@@ -3,8 +3,13 @@ package com.openclassrooms.starterjwt.repository;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.openclassrooms.starterjwt.dto.ResourceVersion;
 import com.openclassrooms.starterjwt.models.User;
 
 @Repository
@@ -12,4 +17,12 @@ public interface UserRepository extends JpaRepository<User, Long> {
   Optional<User> findByEmail(String email);
 
   Boolean existsByEmail(String email); 
+
+  @Query("select new com.openclassrooms.starterjwt.dto.ResourceVersion(u.id, u.updatedAt) from User u where u.id = :id")
+  Optional<ResourceVersion> findResourceVersionById(@Param("id") Long id);
+
+  @Modifying
+  @Transactional
+  @Query("update User u set u.password = :password where u.email = :email")
+  int updatePassword(@Param("email") String email, @Param("password") String password);
 }
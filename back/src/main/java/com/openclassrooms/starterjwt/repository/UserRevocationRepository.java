@@ -0,0 +1,27 @@
+package com.openclassrooms.starterjwt.repository;
+
+import com.openclassrooms.starterjwt.models.UserRevocation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface UserRevocationRepository extends JpaRepository<UserRevocation, Long> {
+
+    @Query("select r.revokedAt from UserRevocation r where r.userId = :userId")
+    Optional<LocalDateTime> findRevokedAtByUserId(@Param("userId") Long userId);
+
+    /**
+     * Drops the revocations older than the given time, a range scan on idx_user_revocations_revoked_at.
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from UserRevocation r where r.revokedAt < :before")
+    int deleteRevokedBefore(@Param("before") LocalDateTime before);
+}
@@ -0,0 +1,51 @@
+package com.openclassrooms.starterjwt.repository;
+
+import com.openclassrooms.starterjwt.models.WaitlistEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.QueryHint;
+import java.util.List;
+import java.util.Optional;
+
+import static org.hibernate.annotations.QueryHints.NATIVE_SPACES;
+
+/**
+ * The native deletes declare the WAITLIST table, which no cached entity maps, so they leave the
+ * second-level cache alone instead of clearing every region.
+ */
+@Repository
+public interface WaitlistRepository extends JpaRepository<WaitlistEntry, Long> {
+
+    List<WaitlistEntry> findBySessionIdOrderById(Long sessionId);
+
+    /**
+     * The head of the queue of a session, and the entry after a given one: both are single seeks on
+     * idx_waitlist_session_id, whatever the length of the queue.
+     */
+    Optional<WaitlistEntry> findFirstBySessionIdOrderById(Long sessionId);
+
+    Optional<WaitlistEntry> findFirstBySessionIdAndIdGreaterThanOrderById(Long sessionId, Long id);
+
+    /**
+     * Returns the number of deleted rows: 0 means the entry was already served or withdrawn.
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "WAITLIST"))
+    @Query(value = "delete from WAITLIST where id = :id", nativeQuery = true)
+    int removeEntry(@Param("id") Long id);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "WAITLIST"))
+    @Query(value = "delete from WAITLIST where session_id = :sessionId and user_id = :userId", nativeQuery = true)
+    int removeUser(@Param("sessionId") Long sessionId, @Param("userId") Long userId);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "WAITLIST"))
+    @Query(value = "delete from WAITLIST where session_id = :sessionId", nativeQuery = true)
+    int removeSession(@Param("sessionId") Long sessionId);
+}
@@ -1,6 +1,10 @@
 package com.openclassrooms.starterjwt.security;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -10,14 +14,17 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
+import com.openclassrooms.starterjwt.security.crypto.TimedBCryptPasswordEncoder;
 import com.openclassrooms.starterjwt.security.jwt.AuthEntryPointJwt;
 import com.openclassrooms.starterjwt.security.jwt.AuthTokenFilter;
 import com.openclassrooms.starterjwt.security.services.UserDetailsServiceImpl;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
 @Configuration
 @EnableWebSecurity
 @EnableGlobalMethodSecurity(
@@ -31,6 +38,15 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
   @Autowired
   private AuthEntryPointJwt unauthorizedHandler;
 
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${oc.app.bcryptStrength:10}")
+  private int bcryptStrength;
+
+  @Value("${oc.app.passwordHashTargetMs:0}")
+  private long passwordHashTargetMs;
+
   @Bean
   public AuthTokenFilter authenticationJwtTokenFilter() {
     return new AuthTokenFilter();
@@ -38,7 +54,9 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
 
   @Override
   public void configure(AuthenticationManagerBuilder authenticationManagerBuilder) throws Exception {
-    authenticationManagerBuilder.userDetailsService(userDetailsService).passwordEncoder(passwordEncoder());
+    authenticationManagerBuilder.userDetailsService(userDetailsService)
+      .passwordEncoder(passwordEncoder())
+      .userDetailsPasswordManager(userDetailsService);
   }
 
   @Bean
@@ -47,9 +65,30 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
     return super.authenticationManagerBean();
   }
 
+  /**
+   * New hashes are prefixed with their encoder id; hashes stored before carry no prefix and are read as bcrypt.
+   * When a latency budget is set, the bcrypt cost is calibrated on startup instead of read from the configuration.
+   * Stored hashes with another cost are re-hashed on the next successful login. A hash without prefix but with
+   * the configured cost is kept as is: re-hashing it only to add the prefix would write on every first login.
+   */
   @Bean
   public PasswordEncoder passwordEncoder() {
-    return new BCryptPasswordEncoder();
+    int strength = passwordHashTargetMs > 0 ? TimedBCryptPasswordEncoder.calibrate(passwordHashTargetMs) : bcryptStrength;
+    PasswordEncoder bcrypt = new TimedBCryptPasswordEncoder(strength, meterRegistry);
+
+    Map<String, PasswordEncoder> encoders = new HashMap<>();
+    encoders.put("bcrypt", bcrypt);
+    DelegatingPasswordEncoder passwordEncoder = new DelegatingPasswordEncoder("bcrypt", encoders) {
+      @Override
+      public boolean upgradeEncoding(String prefixEncodedPassword) {
+        if (prefixEncodedPassword != null && !prefixEncodedPassword.startsWith("{")) {
+          return bcrypt.upgradeEncoding(prefixEncodedPassword);
+        }
+        return super.upgradeEncoding(prefixEncodedPassword);
+      }
+    };
+    passwordEncoder.setDefaultPasswordEncoderForMatches(bcrypt);
+    return passwordEncoder;
   }
 
   @Override
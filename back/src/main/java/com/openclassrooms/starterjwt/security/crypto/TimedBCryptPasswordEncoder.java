@@ -0,0 +1,86 @@
+package com.openclassrooms.starterjwt.security.crypto;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * BCrypt encoder with a configurable cost that records the time spent hashing, and asks for
+ * a re-hash whenever a stored hash was produced with another cost, lower or higher.
+ */
+public class TimedBCryptPasswordEncoder extends BCryptPasswordEncoder {
+  private static final Pattern BCRYPT_COST = Pattern.compile("\\A\\$2[aby]?\\$(\\d\\d)\\$");
+
+  static final int MIN_STRENGTH = 4;
+
+  static final int MAX_STRENGTH = 16;
+
+  private final int strength;
+
+  private final Timer encodeTimer;
+
+  private final Timer matchesTimer;
+
+  public TimedBCryptPasswordEncoder(int strength, MeterRegistry meterRegistry) {
+    super(strength);
+    this.strength = strength;
+    this.encodeTimer = hashingTimer("encode", strength, meterRegistry);
+    this.matchesTimer = hashingTimer("matches", strength, meterRegistry);
+  }
+
+  private static Timer hashingTimer(String operation, int strength, MeterRegistry meterRegistry) {
+    return Timer.builder("auth.password.hashing")
+        .description("Time spent computing bcrypt hashes")
+        .tag("operation", operation)
+        .tag("strength", String.valueOf(strength))
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+  }
+
+  /**
+   * Returns the highest cost whose hashing time on this machine stays within the budget,
+   * never below the bcrypt minimum.
+   */
+  public static int calibrate(long targetMs) {
+    int strength = MIN_STRENGTH;
+    while (strength < MAX_STRENGTH) {
+      BCryptPasswordEncoder candidate = new BCryptPasswordEncoder(strength + 1);
+      long start = System.nanoTime();
+      candidate.encode("calibration");
+      long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+      if (elapsedMs > targetMs) {
+        break;
+      }
+      strength++;
+    }
+    return strength;
+  }
+
+  public int getStrength() {
+    return this.strength;
+  }
+
+  @Override
+  public String encode(CharSequence rawPassword) {
+    return this.encodeTimer.record(() -> super.encode(rawPassword));
+  }
+
+  @Override
+  public boolean matches(CharSequence rawPassword, String encodedPassword) {
+    return this.matchesTimer.record(() -> super.matches(rawPassword, encodedPassword));
+  }
+
+  @Override
+  public boolean upgradeEncoding(String encodedPassword) {
+    if (encodedPassword == null) {
+      return false;
+    }
+
+    Matcher matcher = BCRYPT_COST.matcher(encodedPassword);
+    return matcher.find() && Integer.parseInt(matcher.group(1)) != this.strength;
+  }
+}
@@ -10,6 +10,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -17,15 +18,25 @@ import org.springframework.security.web.authentication.WebAuthenticationDetailsS
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
+import com.openclassrooms.starterjwt.security.services.UserDetailsImpl;
 import com.openclassrooms.starterjwt.security.services.UserDetailsServiceImpl;
 
 public class AuthTokenFilter extends OncePerRequestFilter {
   @Autowired
-  private JwtUtils jwtUtils;
+  private JwtTokenCache jwtTokenCache;
 
   @Autowired
   private UserDetailsServiceImpl userDetailsService;
 
+  @Autowired
+  private UserRevocationList userRevocationList;
+
+  @Autowired
+  private TokenRevocationIndex tokenRevocationIndex;
+
+  @Value("${oc.app.jwtStatelessPrincipal:false}")
+  private boolean statelessPrincipal;
+
   private static final Logger logger = LoggerFactory.getLogger(AuthTokenFilter.class);
 
   @Override
@@ -33,10 +44,11 @@ public class AuthTokenFilter extends OncePerRequestFilter {
       throws ServletException, IOException {
     try {
       String jwt = parseJwt(request);
-      if (jwt != null && jwtUtils.validateJwtToken(jwt)) {
-        String username = jwtUtils.getUserNameFromJwtToken(jwt);
-
-        UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+      JwtValidationResult validation = jwt != null ? jwtTokenCache.validate(jwt) : null;
+      UserDetails userDetails = validation != null && validation.isValid() && isUsableAccessToken(validation.getClaims())
+          ? resolvePrincipal(validation.getClaims())
+          : null;
+      if (userDetails != null) {
         UsernamePasswordAuthenticationToken authentication =
             new UsernamePasswordAuthenticationToken(
                 userDetails,
@@ -53,6 +65,38 @@ public class AuthTokenFilter extends OncePerRequestFilter {
     filterChain.doFilter(request, response);
   }
 
+  /**
+   * Refresh tokens are only accepted by the refresh endpoint, and revoked tokens stay valid
+   * cryptographically until they expire, so both are checked against the claims here.
+   */
+  private boolean isUsableAccessToken(JwtClaims claims) {
+    return !claims.isRefreshToken() && !tokenRevocationIndex.isRevoked(claims.getTokenId(), claims.getExpiration());
+  }
+
+  /**
+   * In stateless mode the principal is rebuilt from the token claims, guarded by the revocation list,
+   * so authenticated requests do not query the users table. Tokens issued without the user claims
+   * still go through the user lookup.
+   */
+  private UserDetails resolvePrincipal(JwtClaims claims) {
+    if (!statelessPrincipal || claims.getId() == null) {
+      return userDetailsService.loadUserByUsername(claims.getSubject());
+    }
+
+    if (userRevocationList.isRevoked(claims.getId())) {
+      return null;
+    }
+
+    return UserDetailsImpl
+        .builder()
+        .id(claims.getId())
+        .username(claims.getSubject())
+        .firstName(claims.getFirstName())
+        .lastName(claims.getLastName())
+        .admin(claims.getAdmin())
+        .build();
+  }
+
   private String parseJwt(HttpServletRequest request) {
     String headerAuth = request.getHeader("Authorization");
 
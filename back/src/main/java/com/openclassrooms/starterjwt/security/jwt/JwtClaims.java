@@ -0,0 +1,68 @@
+package com.openclassrooms.starterjwt.security.jwt;
+
+import java.util.Date;
+
+import io.jsonwebtoken.Claims;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Immutable view of the claims carried by a verified token.
+ * The user fields are null when the token was issued without them.
+ */
+@Builder
+@AllArgsConstructor
+@Getter
+public class JwtClaims {
+  public static final String ID = "id";
+  public static final String FIRST_NAME = "firstName";
+  public static final String LAST_NAME = "lastName";
+  public static final String ADMIN = "admin";
+  public static final String TOKEN_TYPE = "typ";
+  public static final String ACCESS_TOKEN = "access";
+  public static final String REFRESH_TOKEN = "refresh";
+
+  private final String subject;
+
+  private final Date issuedAt;
+
+  private final Date expiration;
+
+  private final String tokenId;
+
+  private final String tokenType;
+
+  private final Long id;
+
+  private final String firstName;
+
+  private final String lastName;
+
+  private final Boolean admin;
+
+  /**
+   * Tokens issued before the type claim existed are access tokens.
+   */
+  public boolean isRefreshToken() {
+    return REFRESH_TOKEN.equals(tokenType);
+  }
+
+  static JwtClaims from(Claims claims) {
+    Object id = claims.get(ID);
+    Object admin = claims.get(ADMIN);
+
+    return JwtClaims
+        .builder()
+        .subject(claims.getSubject())
+        .issuedAt(claims.getIssuedAt())
+        .expiration(claims.getExpiration())
+        .tokenId(claims.getId())
+        .tokenType(claims.get(TOKEN_TYPE, String.class))
+        .id(id instanceof Number ? ((Number) id).longValue() : null)
+        .firstName(claims.get(FIRST_NAME, String.class))
+        .lastName(claims.get(LAST_NAME, String.class))
+        .admin(admin instanceof Boolean ? (Boolean) admin : null)
+        .build();
+  }
+}
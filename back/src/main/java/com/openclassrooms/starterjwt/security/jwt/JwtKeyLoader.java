@@ -0,0 +1,126 @@
+package com.openclassrooms.starterjwt.security.jwt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.core.io.Resource;
+import org.springframework.util.StreamUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+
+/**
+ * Reads the asymmetric keys used by the token engine: a PKCS#8 PEM private key, and public keys
+ * given either as a single X.509 PEM or as a JWKS document (RSA and EC keys).
+ */
+final class JwtKeyLoader {
+  private static final Map<String, String> JWK_CURVES = new LinkedHashMap<>();
+
+  static {
+    JWK_CURVES.put("P-256", "secp256r1");
+    JWK_CURVES.put("P-384", "secp384r1");
+    JWK_CURVES.put("P-521", "secp521r1");
+  }
+
+  private JwtKeyLoader() {
+  }
+
+  static PrivateKey readPrivateKey(Resource resource, SignatureAlgorithm algorithm) throws IOException, GeneralSecurityException {
+    byte[] der = decodePem(read(resource), "PRIVATE KEY");
+    return KeyFactory.getInstance(keyFamily(algorithm)).generatePrivate(new PKCS8EncodedKeySpec(der));
+  }
+
+  /**
+   * Returns the public keys by key id. A PEM file holds a single key, registered under {@code defaultKeyId}.
+   */
+  static Map<String, PublicKey> readPublicKeys(Resource resource, SignatureAlgorithm algorithm, String defaultKeyId)
+      throws IOException, GeneralSecurityException {
+    String content = read(resource);
+    Map<String, PublicKey> keys = new LinkedHashMap<>();
+
+    if (content.trim().startsWith("{")) {
+      JsonNode jwks = new ObjectMapper().readTree(content);
+      for (JsonNode jwk : jwks.path("keys")) {
+        String keyId = jwk.path("kid").asText(defaultKeyId);
+        keys.put(keyId, readJwk(jwk));
+      }
+    } else {
+      byte[] der = decodePem(content, "PUBLIC KEY");
+      keys.put(defaultKeyId, KeyFactory.getInstance(keyFamily(algorithm)).generatePublic(new X509EncodedKeySpec(der)));
+    }
+
+    if (keys.isEmpty()) {
+      throw new IllegalArgumentException("No public key found in " + resource.getDescription());
+    }
+    return keys;
+  }
+
+  private static PublicKey readJwk(JsonNode jwk) throws GeneralSecurityException {
+    String keyType = jwk.path("kty").asText();
+    if ("RSA".equals(keyType)) {
+      RSAPublicKeySpec spec = new RSAPublicKeySpec(unsigned(jwk, "n"), unsigned(jwk, "e"));
+      return KeyFactory.getInstance("RSA").generatePublic(spec);
+    }
+
+    if ("EC".equals(keyType)) {
+      String curve = JWK_CURVES.get(jwk.path("crv").asText());
+      if (curve == null) {
+        throw new IllegalArgumentException("Unsupported JWK curve: " + jwk.path("crv").asText());
+      }
+      AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+      parameters.init(new ECGenParameterSpec(curve));
+      ECPoint point = new ECPoint(unsigned(jwk, "x"), unsigned(jwk, "y"));
+      ECPublicKeySpec spec = new ECPublicKeySpec(point, parameters.getParameterSpec(ECParameterSpec.class));
+      return KeyFactory.getInstance("EC").generatePublic(spec);
+    }
+
+    throw new IllegalArgumentException("Unsupported JWK key type: " + keyType);
+  }
+
+  private static BigInteger unsigned(JsonNode jwk, String field) {
+    return new BigInteger(1, Base64.getUrlDecoder().decode(jwk.path(field).asText()));
+  }
+
+  private static String keyFamily(SignatureAlgorithm algorithm) {
+    if (algorithm.isRsa()) {
+      return "RSA";
+    }
+    if (algorithm.isEllipticCurve()) {
+      return "EC";
+    }
+    throw new IllegalArgumentException("Not an asymmetric JWT algorithm: " + algorithm);
+  }
+
+  private static byte[] decodePem(String pem, String type) {
+    String body = pem
+        .replace("-----BEGIN " + type + "-----", "")
+        .replace("-----END " + type + "-----", "")
+        .replaceAll("\\s", "");
+    return Base64.getDecoder().decode(body);
+  }
+
+  private static String read(Resource resource) throws IOException {
+    try (InputStream inputStream = resource.getInputStream()) {
+      return StreamUtils.copyToString(inputStream, StandardCharsets.UTF_8);
+    }
+  }
+}
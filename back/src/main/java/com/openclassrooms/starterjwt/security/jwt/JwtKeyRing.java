@@ -0,0 +1,124 @@
+package com.openclassrooms.starterjwt.security.jwt;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.util.StringUtils;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SignatureException;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.impl.TextCodec;
+
+/**
+ * Keys built once at startup: the key used to sign new tokens and every key still accepted
+ * for verification, selected by the {@code kid} header. Tokens without a {@code kid} were
+ * issued before key rotation existed and are verified with the current key.
+ * Only tokens using the configured algorithm are accepted.
+ */
+public class JwtKeyRing extends SigningKeyResolverAdapter {
+  private final String signingKeyId;
+
+  private final SignatureAlgorithm signingAlgorithm;
+
+  private final Key signingKey;
+
+  private final Map<String, Key> verificationKeys;
+
+  public JwtKeyRing(String signingKeyId, SignatureAlgorithm signingAlgorithm, Key signingKey,
+      Map<String, Key> verificationKeys) {
+    this.signingKeyId = signingKeyId;
+    this.signingAlgorithm = signingAlgorithm;
+    this.signingKey = signingKey;
+    this.verificationKeys = Collections.unmodifiableMap(new LinkedHashMap<>(verificationKeys));
+  }
+
+  /**
+   * Builds an HS512 key ring from the current secret and the retired ones, given as
+   * {@code kid:secret} pairs separated by commas. Secrets are Base64 decoded, as jjwt does
+   * for string keys, so tokens signed before the rotation support stay valid.
+   */
+  public static JwtKeyRing hmac(String keyId, String secret, String previousKeys) {
+    Key signingKey = hmacKey(secret);
+    Map<String, Key> verificationKeys = new LinkedHashMap<>();
+    verificationKeys.put(keyId, signingKey);
+
+    if (StringUtils.hasText(previousKeys)) {
+      for (String entry : previousKeys.split(",")) {
+        String[] parts = entry.trim().split(":", 2);
+        if (parts.length != 2 || !StringUtils.hasText(parts[0]) || !StringUtils.hasText(parts[1])) {
+          throw new IllegalArgumentException("JWT keys must be declared as kid:secret, got: " + entry);
+        }
+        verificationKeys.putIfAbsent(parts[0].trim(), hmacKey(parts[1].trim()));
+      }
+    }
+
+    return new JwtKeyRing(keyId, SignatureAlgorithm.HS512, signingKey, verificationKeys);
+  }
+
+  /**
+   * Builds a key ring for RSA or EC signatures. Without a private key the ring can only verify
+   * tokens, which is the case of every node except the one issuing them.
+   */
+  public static JwtKeyRing asymmetric(String keyId, SignatureAlgorithm algorithm, PrivateKey privateKey,
+      Map<String, PublicKey> publicKeys) throws GeneralSecurityException {
+    if (algorithm.isHmac()) {
+      throw new IllegalArgumentException("Not an asymmetric JWT algorithm: " + algorithm);
+    }
+
+    Signature signature = Signature.getInstance(algorithm.getJcaName());
+    for (PublicKey publicKey : publicKeys.values()) {
+      signature.initVerify(publicKey);
+    }
+
+    return new JwtKeyRing(keyId, algorithm, privateKey, new LinkedHashMap<String, Key>(publicKeys));
+  }
+
+  private static Key hmacKey(String secret) {
+    return new SecretKeySpec(TextCodec.BASE64.decode(secret), SignatureAlgorithm.HS512.getJcaName());
+  }
+
+  public String getSigningKeyId() {
+    return this.signingKeyId;
+  }
+
+  public SignatureAlgorithm getSigningAlgorithm() {
+    return this.signingAlgorithm;
+  }
+
+  public Key getSigningKey() {
+    if (this.signingKey == null) {
+      throw new IllegalStateException("No JWT signing key configured: this node can only verify tokens");
+    }
+    return this.signingKey;
+  }
+
+  @Override
+  @SuppressWarnings("rawtypes")
+  public Key resolveSigningKey(JwsHeader header, Claims claims) {
+    if (!this.signingAlgorithm.getValue().equals(header.getAlgorithm())) {
+      throw new SignatureException("Unexpected JWT algorithm: " + header.getAlgorithm());
+    }
+
+    String keyId = header.getKeyId();
+    if (keyId == null) {
+      return this.verificationKeys.get(this.signingKeyId);
+    }
+
+    Key key = this.verificationKeys.get(keyId);
+    if (key == null) {
+      throw new SignatureException("Unknown JWT key id: " + keyId);
+    }
+    return key;
+  }
+}
@@ -0,0 +1,96 @@
+package com.openclassrooms.starterjwt.security.jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Keeps the claims of already verified tokens until they expire, so a token is
+ * parsed and signature-checked once per lifetime instead of once per request.
+ * Entries are keyed by a SHA-256 digest of the token, never by the raw token.
+ */
+@Component
+public class JwtTokenCache {
+  private final JwtUtils jwtUtils;
+
+  private final Cache<String, JwtValidationResult> verifiedTokens;
+
+  public JwtTokenCache(JwtUtils jwtUtils,
+      MeterRegistry meterRegistry,
+      @Value("${oc.app.jwtCacheMaxSize:10000}") long maxSize) {
+    this.jwtUtils = jwtUtils;
+    this.verifiedTokens = Caffeine.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfter(new UntilTokenExpiration())
+        .recordStats()
+        .build();
+
+    CaffeineCacheMetrics.monitor(meterRegistry, this.verifiedTokens, "jwtTokens");
+  }
+
+  /**
+   * Returns the cached result of a previously verified token, or verifies it once.
+   * Only successful validations are cached.
+   */
+  public JwtValidationResult validate(String token) {
+    JwtValidationResult[] failure = new JwtValidationResult[1];
+    JwtValidationResult result = this.verifiedTokens.get(digest(token), key -> {
+      JwtValidationResult validation = this.jwtUtils.validate(token);
+      if (validation.isValid()) {
+        return validation;
+      }
+      failure[0] = validation;
+      return null;
+    });
+
+    return result != null ? result : failure[0];
+  }
+
+  public long estimatedSize() {
+    return this.verifiedTokens.estimatedSize();
+  }
+
+  private static String digest(String token) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+      return Base64.getEncoder().encodeToString(hash);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  private static class UntilTokenExpiration implements Expiry<String, JwtValidationResult> {
+    @Override
+    public long expireAfterCreate(String key, JwtValidationResult result, long currentTime) {
+      Date expiration = result.getClaims().getExpiration();
+      if (expiration == null) {
+        return 0;
+      }
+      long remainingMs = expiration.getTime() - System.currentTimeMillis();
+      return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMs));
+    }
+
+    @Override
+    public long expireAfterUpdate(String key, JwtValidationResult result, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+
+    @Override
+    public long expireAfterRead(String key, JwtValidationResult result, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
+}
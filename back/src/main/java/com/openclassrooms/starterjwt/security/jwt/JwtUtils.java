@@ -1,13 +1,23 @@
 package com.openclassrooms.starterjwt.security.jwt;
 
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
 import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.annotation.PostConstruct;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
 
+import com.openclassrooms.starterjwt.security.jwt.JwtValidationResult.Status;
 import com.openclassrooms.starterjwt.security.services.UserDetailsImpl;
 
 import io.jsonwebtoken.*;
@@ -19,41 +29,122 @@ public class JwtUtils {
   @Value("${oc.app.jwtSecret}")
   private String jwtSecret;
 
+  @Value("${oc.app.jwtKeyId:primary}")
+  private String jwtKeyId;
+
+  @Value("${oc.app.jwtPreviousKeys:}")
+  private String jwtPreviousKeys;
+
+  @Value("${oc.app.jwtSigningMode:hmac}")
+  private String jwtSigningMode;
+
+  @Value("${oc.app.jwtAlgorithm:RS256}")
+  private String jwtAlgorithm;
+
+  @Value("${oc.app.jwtPrivateKey:}")
+  private Resource jwtPrivateKey;
+
+  @Value("${oc.app.jwtPublicKeys:}")
+  private Resource jwtPublicKeys;
+
   @Value("${oc.app.jwtExpirationMs}")
   private int jwtExpirationMs;
 
+  @Value("${oc.app.jwtRefreshExpirationMs:86400000}")
+  private long jwtRefreshExpirationMs;
+
+  private JwtKeyRing keyRing;
+
+  private JwtParser jwtParser;
+
+  /**
+   * Derives the keys and configures the parser once; both are immutable afterwards and shared by all requests.
+   * In asymmetric mode the public keys are parsed here and a node without private key only verifies tokens.
+   */
+  @PostConstruct
+  public void init() throws IOException, GeneralSecurityException {
+    if ("asymmetric".equalsIgnoreCase(jwtSigningMode)) {
+      if (jwtPublicKeys == null) {
+        throw new IllegalStateException("oc.app.jwtPublicKeys is required when oc.app.jwtSigningMode is asymmetric");
+      }
+      SignatureAlgorithm algorithm = SignatureAlgorithm.forName(jwtAlgorithm);
+      PrivateKey privateKey = jwtPrivateKey != null ? JwtKeyLoader.readPrivateKey(jwtPrivateKey, algorithm) : null;
+      Map<String, PublicKey> publicKeys = JwtKeyLoader.readPublicKeys(jwtPublicKeys, algorithm, jwtKeyId);
+      this.keyRing = JwtKeyRing.asymmetric(jwtKeyId, algorithm, privateKey, publicKeys);
+    } else {
+      this.keyRing = JwtKeyRing.hmac(jwtKeyId, jwtSecret, jwtPreviousKeys);
+    }
+    this.jwtParser = Jwts.parser().setSigningKeyResolver(keyRing);
+  }
+
   public String generateJwtToken(Authentication authentication) {
+    return generateJwtToken((UserDetailsImpl) authentication.getPrincipal());
+  }
 
-    UserDetailsImpl userPrincipal = (UserDetailsImpl) authentication.getPrincipal();
+  /**
+   * Issues a short-lived access token carrying the user claims.
+   */
+  public String generateJwtToken(UserDetailsImpl userPrincipal) {
+    return tokenBuilder(userPrincipal.getUsername(), JwtClaims.ACCESS_TOKEN, jwtExpirationMs)
+        .claim(JwtClaims.ID, userPrincipal.getId())
+        .claim(JwtClaims.FIRST_NAME, userPrincipal.getFirstName())
+        .claim(JwtClaims.LAST_NAME, userPrincipal.getLastName())
+        .claim(JwtClaims.ADMIN, userPrincipal.getAdmin())
+        .compact();
+  }
 
-    return Jwts.builder()
-        .setSubject((userPrincipal.getUsername()))
-        .setIssuedAt(new Date())
-        .setExpiration(new Date((new Date()).getTime() + jwtExpirationMs))
-        .signWith(SignatureAlgorithm.HS512, jwtSecret)
+  /**
+   * Issues a long-lived refresh token. It only identifies the user, who is loaded again when it is redeemed.
+   */
+  public String generateRefreshToken(UserDetailsImpl userPrincipal) {
+    return tokenBuilder(userPrincipal.getUsername(), JwtClaims.REFRESH_TOKEN, jwtRefreshExpirationMs)
+        .claim(JwtClaims.ID, userPrincipal.getId())
         .compact();
   }
 
+  private JwtBuilder tokenBuilder(String subject, String tokenType, long expirationMs) {
+    Date now = new Date();
+    return Jwts.builder()
+        .setSubject(subject)
+        .setId(UUID.randomUUID().toString())
+        .claim(JwtClaims.TOKEN_TYPE, tokenType)
+        .setIssuedAt(now)
+        .setExpiration(new Date(now.getTime() + expirationMs))
+        .setHeaderParam(JwsHeader.KEY_ID, keyRing.getSigningKeyId())
+        .signWith(keyRing.getSigningAlgorithm(), keyRing.getSigningKey());
+  }
+
   public String getUserNameFromJwtToken(String token) {
-    return Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(token).getBody().getSubject();
+    return jwtParser.parseClaimsJws(token).getBody().getSubject();
   }
 
   public boolean validateJwtToken(String authToken) {
+    return validate(authToken).isValid();
+  }
+
+  /**
+   * Parses and verifies the token once. Failures are reported through the result status
+   * rather than logged as errors, since this runs on every authenticated request.
+   */
+  public JwtValidationResult validate(String authToken) {
     try {
-      Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(authToken);
-      return true;
+      Claims claims = jwtParser.parseClaimsJws(authToken).getBody();
+      return JwtValidationResult.valid(JwtClaims.from(claims));
     } catch (SignatureException e) {
-      logger.error("Invalid JWT signature: {}", e.getMessage());
+      logger.debug("Invalid JWT signature: {}", e.getMessage());
+      return JwtValidationResult.invalid(Status.INVALID_SIGNATURE);
     } catch (MalformedJwtException e) {
-      logger.error("Invalid JWT token: {}", e.getMessage());
+      logger.debug("Invalid JWT token: {}", e.getMessage());
+      return JwtValidationResult.invalid(Status.MALFORMED);
     } catch (ExpiredJwtException e) {
-      logger.error("JWT token is expired: {}", e.getMessage());
+      logger.debug("JWT token is expired: {}", e.getMessage());
+      return JwtValidationResult.invalid(Status.EXPIRED);
     } catch (UnsupportedJwtException e) {
-      logger.error("JWT token is unsupported: {}", e.getMessage());
+      logger.debug("JWT token is unsupported: {}", e.getMessage());
+      return JwtValidationResult.invalid(Status.UNSUPPORTED);
     } catch (IllegalArgumentException e) {
-      logger.error("JWT claims string is empty: {}", e.getMessage());
+      logger.debug("JWT claims string is empty: {}", e.getMessage());
+      return JwtValidationResult.invalid(Status.EMPTY);
     }
-
-    return false;
   }
 }
@@ -0,0 +1,55 @@
+package com.openclassrooms.starterjwt.security.jwt;
+
+/**
+ * Outcome of a single-pass token validation: either the verified claims or the reason of the failure.
+ */
+public final class JwtValidationResult {
+  public enum Status {
+    VALID,
+    INVALID_SIGNATURE,
+    MALFORMED,
+    EXPIRED,
+    UNSUPPORTED,
+    EMPTY
+  }
+
+  private static final JwtValidationResult[] FAILURES = new JwtValidationResult[Status.values().length];
+
+  static {
+    for (Status status : Status.values()) {
+      FAILURES[status.ordinal()] = new JwtValidationResult(status, null);
+    }
+  }
+
+  private final Status status;
+
+  private final JwtClaims claims;
+
+  private JwtValidationResult(Status status, JwtClaims claims) {
+    this.status = status;
+    this.claims = claims;
+  }
+
+  public static JwtValidationResult valid(JwtClaims claims) {
+    return new JwtValidationResult(Status.VALID, claims);
+  }
+
+  public static JwtValidationResult invalid(Status status) {
+    if (status == Status.VALID) {
+      throw new IllegalArgumentException("A failed validation cannot have the VALID status");
+    }
+    return FAILURES[status.ordinal()];
+  }
+
+  public boolean isValid() {
+    return this.status == Status.VALID;
+  }
+
+  public Status getStatus() {
+    return this.status;
+  }
+
+  public JwtClaims getClaims() {
+    return this.claims;
+  }
+}
@@ -0,0 +1,69 @@
+package com.openclassrooms.starterjwt.security.jwt;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory set of revoked token ids, checked on every request instead of a database lookup.
+ * Ids are grouped in buckets by the expiration of their token: a lookup only probes the bucket
+ * of the token being checked, and a whole bucket is dropped once its tokens can no longer be
+ * presented, so the index never outgrows the tokens that are still alive.
+ */
+@Component
+public class TokenRevocationIndex {
+  private final ConcurrentNavigableMap<Long, Set<String>> buckets = new ConcurrentSkipListMap<>();
+
+  private final long bucketMs;
+
+  public TokenRevocationIndex(@Value("${oc.app.jwtRevocationBucketMs:60000}") long bucketMs) {
+    this.bucketMs = bucketMs;
+  }
+
+  /**
+   * Returns false when the id was already revoked, or when the token has no id or has
+   * already expired, which lets callers redeem a token at most once.
+   */
+  public boolean revoke(String tokenId, Date expiration) {
+    if (tokenId == null || expiration == null || expiration.getTime() <= System.currentTimeMillis()) {
+      return false;
+    }
+    evictExpired();
+    return this.buckets.computeIfAbsent(bucketOf(expiration), bucket -> ConcurrentHashMap.newKeySet()).add(tokenId);
+  }
+
+  public boolean isRevoked(String tokenId, Date expiration) {
+    if (tokenId == null || expiration == null) {
+      return false;
+    }
+    Set<String> bucket = this.buckets.get(bucketOf(expiration));
+    return bucket != null && bucket.contains(tokenId);
+  }
+
+  public int size() {
+    evictExpired();
+    int size = 0;
+    for (Set<String> bucket : this.buckets.values()) {
+      size += bucket.size();
+    }
+    return size;
+  }
+
+  /**
+   * A bucket holds tokens expiring before its upper bound, so it can go once that bound has passed.
+   */
+  private void evictExpired() {
+    Map<Long, Set<String>> expired = this.buckets.headMap(System.currentTimeMillis() / this.bucketMs);
+    expired.clear();
+  }
+
+  private long bucketOf(Date expiration) {
+    return expiration.getTime() / this.bucketMs + 1;
+  }
+}
@@ -0,0 +1,69 @@
+package com.openclassrooms.starterjwt.security.jwt;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.openclassrooms.starterjwt.models.UserRevocation;
+import com.openclassrooms.starterjwt.repository.UserRevocationRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Denylist of users whose tokens must no longer be trusted, checked instead of reloading the user when the
+ * principal is rebuilt from the token claims. Revocations are stored in USER_REVOCATIONS, so every instance
+ * sees them. Each instance remembers the answer for a user during a short delay: the table is read at most
+ * once per user and delay, and a revocation made through another instance is honoured within that delay.
+ * A revocation only needs to outlive the tokens issued before it, so it is dropped after one token lifetime.
+ */
+@Component
+public class UserRevocationList {
+  private static final long NOT_REVOKED = Long.MIN_VALUE;
+
+  private final UserRevocationRepository userRevocationRepository;
+
+  private final Cache<Long, Long> revokedAt;
+
+  private final long retentionMs;
+
+  public UserRevocationList(UserRevocationRepository userRevocationRepository,
+      MeterRegistry meterRegistry,
+      @Value("${oc.app.jwtExpirationMs}") long retentionMs,
+      @Value("${oc.app.userRevocationCacheTtlMs:30000}") long cacheTtlMs,
+      @Value("${oc.app.userRevocationCacheMaxSize:10000}") long cacheMaxSize) {
+    this.userRevocationRepository = userRevocationRepository;
+    this.retentionMs = retentionMs;
+    this.revokedAt = Caffeine.newBuilder()
+        .maximumSize(cacheMaxSize)
+        .expireAfterWrite(cacheTtlMs, TimeUnit.MILLISECONDS)
+        .recordStats()
+        .build();
+
+    CaffeineCacheMetrics.monitor(meterRegistry, this.revokedAt, "userRevocations");
+  }
+
+  public void revoke(Long userId) {
+    LocalDateTime now = LocalDateTime.now();
+    this.userRevocationRepository.save(new UserRevocation(userId, now));
+    this.revokedAt.put(userId, toMillis(now));
+    this.userRevocationRepository.deleteRevokedBefore(now.minus(this.retentionMs, ChronoUnit.MILLIS));
+  }
+
+  public boolean isRevoked(Long userId) {
+    long revokedTime = this.revokedAt.get(userId, id -> this.userRevocationRepository.findRevokedAtByUserId(id)
+        .map(UserRevocationList::toMillis)
+        .orElse(NOT_REVOKED));
+    return revokedTime >= System.currentTimeMillis() - this.retentionMs;
+  }
+
+  private static long toMillis(LocalDateTime time) {
+    return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+  }
+}
@@ -0,0 +1,88 @@
+package com.openclassrooms.starterjwt.security.services;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+
+/**
+ * Runs the password checks of logins on a dedicated pool sized to the CPU count, so a burst of
+ * logins cannot take every request thread. When the queue is full, or a login waits longer than
+ * the timeout, the login is rejected right away with a {@link RejectedExecutionException}.
+ */
+@Component
+public class AuthenticationExecutor implements DisposableBean {
+  private final ThreadPoolExecutor executor;
+
+  private final long timeoutMs;
+
+  private final Timer queueWaitTimer;
+
+  private final Timer authenticationTimer;
+
+  public AuthenticationExecutor(MeterRegistry meterRegistry,
+      @Value("${oc.app.loginThreads:0}") int threads,
+      @Value("${oc.app.loginQueueCapacity:64}") int queueCapacity,
+      @Value("${oc.app.loginTimeoutMs:10000}") long timeoutMs) {
+    int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("login-"),
+        new ThreadPoolExecutor.AbortPolicy());
+    this.timeoutMs = timeoutMs;
+
+    this.queueWaitTimer = Timer.builder("auth.login.queue.wait")
+        .description("Time a login waited for a free worker")
+        .register(meterRegistry);
+    this.authenticationTimer = Timer.builder("auth.login.authentication")
+        .description("Time spent authenticating a login, password hashing included")
+        .register(meterRegistry);
+    new ExecutorServiceMetrics(this.executor, "login", Tags.empty()).bindTo(meterRegistry);
+  }
+
+  public Authentication authenticate(Supplier<Authentication> authentication) {
+    long submittedAt = System.nanoTime();
+    Future<Authentication> result = this.executor.submit(() -> {
+      this.queueWaitTimer.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+      return this.authenticationTimer.record(authentication);
+    });
+
+    try {
+      return result.get(this.timeoutMs, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    } catch (TimeoutException e) {
+      result.cancel(true);
+      throw new RejectedExecutionException("Login was not processed within " + this.timeoutMs + " ms");
+    } catch (InterruptedException e) {
+      result.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new RejectedExecutionException("Interrupted while waiting for login", e);
+    }
+  }
+
+  @Override
+  public void destroy() {
+    this.executor.shutdownNow();
+  }
+}
@@ -1,25 +1,77 @@
 package com.openclassrooms.starterjwt.security.services;
 
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.openclassrooms.starterjwt.models.User;
 import com.openclassrooms.starterjwt.repository.UserRepository;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
 @Service
-public class UserDetailsServiceImpl implements UserDetailsService {
+public class UserDetailsServiceImpl implements UserDetailsService, UserDetailsPasswordService {
   UserRepository userRepository;
 
-  UserDetailsServiceImpl(UserRepository userRepository) {
+  private final Cache<String, UserDetailsImpl> userDetailsCache;
+
+  UserDetailsServiceImpl(UserRepository userRepository,
+      MeterRegistry meterRegistry,
+      @Value("${oc.app.userDetailsCacheTtlMs:300000}") long ttlMs,
+      @Value("${oc.app.userDetailsCacheMaxSize:10000}") long maxSize) {
     this.userRepository = userRepository;
+    this.userDetailsCache = Caffeine.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(ttlMs, TimeUnit.MILLISECONDS)
+        .recordStats()
+        .build();
+
+    CaffeineCacheMetrics.monitor(meterRegistry, this.userDetailsCache, "userDetails");
   }
 
+  /**
+   * Served from a per-email cache; concurrent misses on the same email share a single query.
+   * Unknown emails are not cached.
+   */
   @Override
-  @Transactional
   public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+    return this.userDetailsCache.get(username, this::loadFromRepository);
+  }
+
+  /**
+   * Called after a successful login when the stored hash no longer matches the configured encoding.
+   */
+  @Override
+  public UserDetails updatePassword(UserDetails user, String newPassword) {
+    this.userRepository.updatePassword(user.getUsername(), newPassword);
+
+    UserDetailsImpl current = (UserDetailsImpl) user;
+    UserDetailsImpl updated = UserDetailsImpl
+            .builder()
+            .id(current.getId())
+            .username(current.getUsername())
+            .lastName(current.getLastName())
+            .firstName(current.getFirstName())
+            .admin(current.getAdmin())
+            .password(newPassword)
+            .build();
+    this.userDetailsCache.put(updated.getUsername(), updated);
+    return updated;
+  }
+
+  public void evictUser(Long userId) {
+    this.userDetailsCache.asMap().values().removeIf(userDetails -> userId.equals(userDetails.getId()));
+  }
+
+  private UserDetailsImpl loadFromRepository(String username) {
     User user = userRepository.findByEmail(username)
         .orElseThrow(() -> new UsernameNotFoundException("User Not Found with email: " + username));
 
@@ -29,6 +81,7 @@ public class UserDetailsServiceImpl implements UserDetailsService {
             .username(user.getEmail())
             .lastName(user.getLastName())
             .firstName(user.getFirstName())
+            .admin(user.isAdmin())
             .password(user.getPassword())
             .build();
   }
@@ -0,0 +1,178 @@
+package com.openclassrooms.starterjwt.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the JSON bodies of single resources encoded, so that a resource read again is written as bytes instead
+ * of being mapped and serialized on every request. Each body is stored with the entity tag of the version it
+ * was encoded from, and is only served to requests that found the same tag: a change always yields a new tag,
+ * so a stale body can never be served. Services still evict the resources they change, to free the memory.
+ * Bodies from the gzip threshold up are also kept compressed, for the clients that accept it. The two
+ * encodings are different representations, so clients that accept gzip are given their own strong tag, see
+ * {@link #checkNotModified(WebRequest, String, long)}.
+ */
+@Component
+public class ResponseBodyCache {
+    public static final String SESSION = "session";
+
+    public static final String TEACHER = "teacher";
+
+    public static final String USER = "user";
+
+    private final ObjectMapper objectMapper;
+
+    private final Cache<String, Body> bodies;
+
+    private final int gzipMinBytes;
+
+    public ResponseBodyCache(ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry,
+                             @Value("${oc.app.responseCacheMaxBytes:16777216}") long maxBytes,
+                             @Value("${oc.app.responseCacheGzipMinBytes:1024}") int gzipMinBytes) {
+        this.objectMapper = objectMapper;
+        this.gzipMinBytes = gzipMinBytes;
+        this.bodies = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .<String, Body>weigher((key, body) -> body.size())
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, this.bodies, "responseBodies");
+    }
+
+    public static String key(String kind, Object id) {
+        return kind + ":" + id;
+    }
+
+    /**
+     * Returns the body cached under the key for this tag, or encodes and caches the value of the loader.
+     * Returns null when the loader finds nothing.
+     */
+    public Body get(String key, String eTag, Supplier<?> loader) {
+        Body body = this.bodies.getIfPresent(key);
+        if (body != null && body.getETag().equals(eTag)) {
+            return body;
+        }
+
+        Object value = loader.get();
+        if (value == null) {
+            return null;
+        }
+        body = encode(value, eTag);
+        this.bodies.put(key, body);
+        return body;
+    }
+
+    public void evict(String key) {
+        this.bodies.invalidate(key);
+    }
+
+    private Body encode(Object value, String eTag) {
+        try {
+            byte[] json = this.objectMapper.writeValueAsBytes(value);
+            return new Body(eTag, json, json.length >= this.gzipMinBytes ? gzip(json) : null);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] json) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Answers a conditional GET for a resource written by {@link Body#toResponse(WebRequest)}, with the tag
+     * of the representation this client gets: the tag followed by {@code -gzip} when it accepts gzip, even
+     * for a body too small to be compressed, since the tag cannot depend on a body not read yet. A client
+     * that still holds the other form of the current tag is answered 304 as well, with the tag it holds.
+     * Pass -1 as the last modification time when there is none.
+     */
+    public static boolean checkNotModified(WebRequest request, String eTag, long lastModifiedMillis) {
+        String gzipETag = gzipETag(eTag);
+        boolean gzip = acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        String served = gzip ? gzipETag : eTag;
+        String other = gzip ? eTag : gzipETag;
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        return request.checkNotModified(ifNoneMatch != null && ifNoneMatch.contains(other) ? other : served,
+                lastModifiedMillis);
+    }
+
+    static String gzipETag(String eTag) {
+        return eTag.substring(0, eTag.length() - 1) + "-gzip\"";
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+                continue;
+            }
+            boolean refused = parts.length > 1 && parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+            return !refused;
+        }
+        return false;
+    }
+
+    /**
+     * One encoded body with the tag it was encoded for. The arrays are shared and must not be modified.
+     */
+    @Getter
+    public static final class Body {
+        private final String eTag;
+
+        private final byte[] json;
+
+        private final byte[] gzip;
+
+        Body(String eTag, byte[] json, byte[] gzip) {
+            this.eTag = eTag;
+            this.json = json;
+            this.gzip = gzip;
+        }
+
+        int size() {
+            return this.json.length + (this.gzip != null ? this.gzip.length : 0);
+        }
+
+        /**
+         * Answers with the compressed body when there is one and the client accepts it, the plain one otherwise.
+         * The response always varies on the accepted encodings, as its tag does.
+         */
+        public ResponseEntity<byte[]> toResponse(WebRequest request) {
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (this.gzip == null || !acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+                return response.body(this.json);
+            }
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(this.gzip);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.openclassrooms.starterjwt.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.starterjwt.dto.SessionDto;
+import com.openclassrooms.starterjwt.dto.SessionImportReportDto;
+import com.openclassrooms.starterjwt.repository.TeacherRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Imports and exports sessions as one JSON array, item by item, so memory stays flat whatever the
+ * number of sessions. Imported sessions are inserted with plain JDBC batches: the identity-generated
+ * ids of {@link com.openclassrooms.starterjwt.models.Session} keep Hibernate from batching its inserts.
+ */
+@Service
+public class SessionBulkService {
+    static final int MAX_REPORTED_ERRORS = 100;
+
+    private static final String INSERT_SESSION = "insert into SESSIONS"
+            + " (name, description, date, teacher_id, capacity, participant_count, version, created_at, updated_at)"
+            + " values (?, ?, ?, ?, ?, 0, 0, ?, ?)";
+
+    private static final String EXPORT_SESSIONS = "select s.id, s.name, s.date, s.teacher_id, s.description,"
+            + " s.capacity, s.version, s.created_at, s.updated_at, p.user_id"
+            + " from SESSIONS s left join PARTICIPATE p on p.session_id = s.id order by s.id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final TeacherRepository teacherRepository;
+
+    private final ObjectMapper objectMapper;
+
+    private final Validator validator;
+
+    private final SessionListSnapshot sessionListSnapshot;
+
+    private final int batchSize;
+
+    private final int exportFetchSize;
+
+    public SessionBulkService(DataSource dataSource,
+                              PlatformTransactionManager transactionManager,
+                              TeacherRepository teacherRepository,
+                              ObjectMapper objectMapper,
+                              Validator validator,
+                              SessionListSnapshot sessionListSnapshot,
+                              @Value("${oc.app.sessionImportBatchSize:500}") int batchSize,
+                              @Value("${oc.app.sessionExportFetchSize:1000}") int exportFetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.teacherRepository = teacherRepository;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.sessionListSnapshot = sessionListSnapshot;
+        this.batchSize = batchSize;
+        this.exportFetchSize = exportFetchSize;
+    }
+
+    /**
+     * Reads a JSON array of sessions one item at a time and inserts the valid ones in batches, each batch in
+     * its own transaction. Invalid items, and the items of a batch the database refused, are reported by
+     * position; the other items are still imported. Ids, versions and participants are not imported.
+     */
+    public SessionImportReportDto importSessions(InputStream json) throws IOException {
+        SessionImportReportDto report = new SessionImportReportDto();
+        Map<Long, Boolean> teachers = new HashMap<>();
+        List<Object[]> rows = new ArrayList<>(this.batchSize);
+        List<Integer> indexes = new ArrayList<>(this.batchSize);
+
+        int index = 0;
+        try (JsonParser parser = this.objectMapper.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                reject(report, index, "Expected a JSON array of sessions");
+                return report;
+            }
+
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                JsonNode item = parser.readValueAsTree();
+                String error = readInto(item, rows, teachers);
+                if (error != null) {
+                    reject(report, index, error);
+                } else {
+                    indexes.add(index);
+                    if (rows.size() == this.batchSize) {
+                        insert(rows, indexes, report);
+                    }
+                }
+                index++;
+            }
+        } catch (JsonProcessingException e) {
+            reject(report, index, "Malformed JSON, import stopped: " + e.getOriginalMessage());
+        }
+
+        insert(rows, indexes, report);
+        return report;
+    }
+
+    /**
+     * Writes every session with its participants as a JSON array, in the format of the read endpoints.
+     * Rows are streamed from a single ordered join and each session is written as soon as it is complete.
+     */
+    public void exportSessions(OutputStream out) throws IOException {
+        JsonGenerator generator = this.objectMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.writeStartArray();
+
+        SessionDto[] current = new SessionDto[1];
+        try {
+            this.jdbcTemplate.query(this::prepareExport, (ResultSet row) -> {
+                long id = row.getLong("id");
+                if (current[0] == null || current[0].getId() != id) {
+                    write(generator, current[0]);
+                    current[0] = toDto(row);
+                }
+                long userId = row.getLong("user_id");
+                if (!row.wasNull()) {
+                    current[0].getUsers().add(userId);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        write(generator, current[0]);
+
+        generator.writeEndArray();
+        generator.close();
+    }
+
+    /**
+     * Prepares the export as a forward-only, read-only statement. MySQL streams the rows of such a statement
+     * one by one when its fetch size is Integer.MIN_VALUE, instead of reading the whole join into memory;
+     * other drivers take the configured fetch size. Only this statement streams, every other query keeps
+     * the driver defaults.
+     */
+    private PreparedStatement prepareExport(Connection connection) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(EXPORT_SESSIONS,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        String database = connection.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT);
+        statement.setFetchSize(database.contains("mysql") ? Integer.MIN_VALUE : this.exportFetchSize);
+        return statement;
+    }
+
+    private String readInto(JsonNode item, List<Object[]> rows, Map<Long, Boolean> teachers) {
+        if (!item.isObject()) {
+            return "Expected a session object";
+        }
+
+        SessionDto session;
+        try {
+            session = this.objectMapper.treeToValue(item, SessionDto.class);
+        } catch (JsonProcessingException e) {
+            return "Unreadable session: " + e.getOriginalMessage();
+        }
+
+        Set<ConstraintViolation<SessionDto>> violations = this.validator.validate(session);
+        if (!violations.isEmpty()) {
+            return violations.stream()
+                    .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", "));
+        }
+        if (session.getUsers() != null && !session.getUsers().isEmpty()) {
+            return "Participants cannot be imported, they book once the session exists";
+        }
+        if (!teachers.computeIfAbsent(session.getTeacher_id(), this.teacherRepository::existsById)) {
+            return "Unknown teacher " + session.getTeacher_id();
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        rows.add(new Object[]{
+                session.getName(),
+                session.getDescription(),
+                new Timestamp(session.getDate().getTime()),
+                session.getTeacher_id(),
+                session.getCapacity(),
+                now,
+                now});
+        return null;
+    }
+
+    private void insert(List<Object[]> rows, List<Integer> indexes, SessionImportReportDto report) {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        try {
+            this.transactionTemplate.executeWithoutResult(status -> this.jdbcTemplate.batchUpdate(INSERT_SESSION, rows));
+            report.setImported(report.getImported() + rows.size());
+            this.sessionListSnapshot.invalidate();
+        } catch (DataAccessException e) {
+            for (Integer index : indexes) {
+                reject(report, index, "Could not be stored: " + e.getMostSpecificCause().getMessage());
+            }
+        }
+        rows.clear();
+        indexes.clear();
+    }
+
+    private static void reject(SessionImportReportDto report, int index, String message) {
+        report.setFailed(report.getFailed() + 1);
+        if (report.getErrors().size() < MAX_REPORTED_ERRORS) {
+            report.getErrors().add(new SessionImportReportDto.ItemError(index, message));
+        }
+    }
+
+    private static SessionDto toDto(ResultSet row) throws SQLException {
+        Timestamp createdAt = row.getTimestamp("created_at");
+        Timestamp updatedAt = row.getTimestamp("updated_at");
+        SessionDto session = new SessionDto(
+                row.getLong("id"),
+                row.getString("name"),
+                row.getTimestamp("date"),
+                (Long) row.getObject("teacher_id", Long.class),
+                row.getString("description"),
+                (Integer) row.getObject("capacity", Integer.class),
+                row.getLong("version"),
+                createdAt != null ? createdAt.toLocalDateTime() : null,
+                updatedAt != null ? updatedAt.toLocalDateTime() : null);
+        session.setUsers(new ArrayList<>());
+        return session;
+    }
+
+    private void write(JsonGenerator generator, SessionDto session) {
+        if (session == null) {
+            return;
+        }
+        try {
+            this.objectMapper.writeValue(generator, session);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
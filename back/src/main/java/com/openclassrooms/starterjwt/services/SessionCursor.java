@@ -0,0 +1,48 @@
+package com.openclassrooms.starterjwt.services;
+
+import com.openclassrooms.starterjwt.dto.SessionDto;
+import com.openclassrooms.starterjwt.exception.BadRequestException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Position of the last session of a page in the (date, id) ordering, exchanged with clients as an opaque string.
+ */
+@Getter
+@AllArgsConstructor
+public class SessionCursor {
+    private final Date date;
+
+    private final Long id;
+
+    public static SessionCursor of(SessionDto session) {
+        return new SessionCursor(session.getDate(), session.getId());
+    }
+
+    public static SessionCursor parse(String cursor) {
+        if (cursor == null) {
+            return null;
+        }
+
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf(':');
+            if (separator < 0) {
+                throw new BadRequestException();
+            }
+            return new SessionCursor(new Date(Long.parseLong(decoded.substring(0, separator))),
+                    Long.valueOf(decoded.substring(separator + 1)));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException();
+        }
+    }
+
+    public String encode() {
+        String raw = date.getTime() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
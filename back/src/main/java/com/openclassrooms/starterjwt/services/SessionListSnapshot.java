@@ -0,0 +1,213 @@
+package com.openclassrooms.starterjwt.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.starterjwt.dto.ResourceVersion;
+import com.openclassrooms.starterjwt.dto.SessionDto;
+import com.openclassrooms.starterjwt.repository.SessionRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the full session list encoded as JSON in memory, so that the list endpoint answers without reading
+ * the database or serializing anything. Writes to sessions call {@link #invalidate()} and the list is rebuilt
+ * on a background thread once they have committed; the writes of one debounce delay share a single rebuild.
+ * Until then readers keep getting the previous list, so it may lag behind a write by the delay plus the
+ * rebuild time. When a rebuild fails the snapshot is dropped, and readers fall back to the database.
+ * Writes made through another instance do not invalidate this one: the tag of the collection is compared
+ * with the snapshot's at a fixed interval, and a snapshot not confirmed within the staleness bound is no
+ * longer served, so that neither the list nor a 304 answered from its tag is older than the bound.
+ */
+@Component
+@Log4j2
+public class SessionListSnapshot implements DisposableBean {
+    private final SessionRepository sessionRepository;
+
+    private final ObjectMapper objectMapper;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ScheduledExecutorService executor;
+
+    private final Timer rebuildTimer;
+
+    private final boolean enabled;
+
+    private final long debounceMs;
+
+    private final long maxStaleMs;
+
+    /**
+     * Source of {@link #verifiedAt} and of the staleness check, {@link System#nanoTime()} outside of tests.
+     */
+    private final LongSupplier nanoClock;
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+
+    /**
+     * When the tag of the current snapshot was last read from the database, in nanoseconds of the clock.
+     */
+    private volatile long verifiedAt;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    @Autowired
+    public SessionListSnapshot(SessionRepository sessionRepository,
+                               ObjectMapper objectMapper,
+                               PlatformTransactionManager transactionManager,
+                               MeterRegistry meterRegistry,
+                               @Value("${oc.app.sessionListSnapshotEnabled:true}") boolean enabled,
+                               @Value("${oc.app.sessionListDebounceMs:200}") long debounceMs,
+                               @Value("${oc.app.sessionListMaxStaleMs:5000}") long maxStaleMs) {
+        this(sessionRepository, objectMapper, transactionManager, meterRegistry, enabled, debounceMs, maxStaleMs,
+                System::nanoTime);
+    }
+
+    SessionListSnapshot(SessionRepository sessionRepository,
+                        ObjectMapper objectMapper,
+                        PlatformTransactionManager transactionManager,
+                        MeterRegistry meterRegistry,
+                        boolean enabled,
+                        long debounceMs,
+                        long maxStaleMs,
+                        LongSupplier nanoClock) {
+        this.sessionRepository = sessionRepository;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.executor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("session-list-"));
+        this.rebuildTimer = Timer.builder("session.list.snapshot.rebuild")
+                .description("Time spent reading and encoding the session list")
+                .register(meterRegistry);
+        this.enabled = enabled;
+        this.debounceMs = debounceMs;
+        this.maxStaleMs = maxStaleMs;
+        this.nanoClock = nanoClock;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        invalidate();
+        if (this.enabled) {
+            long period = Math.max(1, this.maxStaleMs / 2);
+            this.executor.scheduleWithFixedDelay(this::verify, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns the latest list, or null when none is available or it was not confirmed within the staleness
+     * bound: the caller then reads the database.
+     */
+    public Snapshot current() {
+        Snapshot snapshot = this.current.get();
+        if (snapshot == null || this.nanoClock.getAsLong() - this.verifiedAt > TimeUnit.MILLISECONDS.toNanos(this.maxStaleMs)) {
+            return null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Schedules a rebuild of the list, once the surrounding transaction has committed when there is one.
+     */
+    public void invalidate() {
+        if (!this.enabled) {
+            return;
+        }
+        AfterCommit.run(this::schedule);
+    }
+
+    private void schedule() {
+        if (this.scheduled.compareAndSet(false, true)) {
+            this.executor.schedule(this::rebuild, this.debounceMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Confirms the snapshot when the collection still has its tag, and schedules a rebuild otherwise.
+     */
+    void verify() {
+        long startedAt = this.nanoClock.getAsLong();
+        try {
+            ResourceVersion version = this.transactionTemplate.execute(
+                    status -> this.sessionRepository.findCollectionVersion());
+            Snapshot snapshot = this.current.get();
+            if (snapshot != null && version != null && snapshot.getETag().equals(version.getETag())) {
+                this.verifiedAt = startedAt;
+            } else {
+                schedule();
+            }
+        } catch (RuntimeException e) {
+            log.warn("Session list could not be checked, it is read from the database once it is too old", e);
+        }
+    }
+
+    void rebuild() {
+        // Cleared before reading, so that a write committed during the rebuild schedules the next one.
+        this.scheduled.set(false);
+        long startedAt = this.nanoClock.getAsLong();
+        try {
+            this.current.set(this.rebuildTimer.record(this::read));
+            this.verifiedAt = startedAt;
+        } catch (RuntimeException e) {
+            log.warn("Session list could not be rebuilt, it is read from the database until the next write", e);
+            this.current.set(null);
+        }
+    }
+
+    /**
+     * Reads the tag of the collection and the sessions in one read-only transaction, so that the tag
+     * describes the body it is served with.
+     */
+    private Snapshot read() {
+        return this.transactionTemplate.execute(status -> {
+            ResourceVersion version = this.sessionRepository.findCollectionVersion();
+            List<SessionDto> sessions = SessionService.withParticipants(this.sessionRepository.findAllDtos(),
+                    this.sessionRepository.findAllParticipantIds());
+            try {
+                return new Snapshot(this.objectMapper.writeValueAsBytes(sessions), version.getETag());
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public void destroy() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * One encoded list with its entity tag. The body is shared by every reader and must not be modified.
+     */
+    @Getter
+    public static final class Snapshot {
+        private final byte[] body;
+
+        private final String eTag;
+
+        public Snapshot(byte[] body, String eTag) {
+            this.body = body;
+            this.eTag = eTag;
+        }
+    }
+}
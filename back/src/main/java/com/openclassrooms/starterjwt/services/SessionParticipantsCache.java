@@ -0,0 +1,28 @@
+package com.openclassrooms.starterjwt.services;
+
+import com.openclassrooms.starterjwt.models.Session;
+import org.hibernate.SessionFactory;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Drops the cached participants of a session after the native PARTICIPATE statements changed them.
+ * Hibernate only clears a cached collection through the entity type of its elements, so declaring
+ * PARTICIPATE on those statements leaves the collection stale, and declaring USERS would clear every
+ * cached user on each booking. Inside a transaction the entry is dropped once it has committed.
+ */
+@Component
+public class SessionParticipantsCache {
+    static final String ROLE = Session.class.getName() + ".users";
+
+    private final SessionFactory sessionFactory;
+
+    public SessionParticipantsCache(EntityManagerFactory entityManagerFactory) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+    }
+
+    public void evict(Long sessionId) {
+        AfterCommit.run(() -> this.sessionFactory.getCache().evictCollectionData(ROLE, sessionId));
+    }
+}
@@ -1,78 +1,420 @@
 package com.openclassrooms.starterjwt.services;
 
+import com.openclassrooms.starterjwt.dto.ResourceVersion;
+import com.openclassrooms.starterjwt.dto.SessionDto;
+import com.openclassrooms.starterjwt.dto.SessionPatchDto;
 import com.openclassrooms.starterjwt.exception.BadRequestException;
+import com.openclassrooms.starterjwt.exception.ConflictException;
 import com.openclassrooms.starterjwt.exception.NotFoundException;
 import com.openclassrooms.starterjwt.models.Session;
-import com.openclassrooms.starterjwt.models.User;
+import com.openclassrooms.starterjwt.models.WaitlistEntry;
 import com.openclassrooms.starterjwt.repository.SessionRepository;
+import com.openclassrooms.starterjwt.repository.TeacherRepository;
 import com.openclassrooms.starterjwt.repository.UserRepository;
+import com.openclassrooms.starterjwt.repository.WaitlistRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Service
 public class SessionService {
+    public static final int DEFAULT_PAGE_SIZE = 20;
+
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private static final long RETRY_BACKOFF_MS = 20;
+
+    private static final Date EARLIEST = new Date(0L);
+
+    private static final Date LATEST = Date.from(LocalDate.of(9999, 12, 31).atStartOfDay(ZoneOffset.UTC).toInstant());
+
     private final SessionRepository sessionRepository;
 
     private final UserRepository userRepository;
 
-    public SessionService(SessionRepository sessionRepository, UserRepository userRepository) {
+    private final TeacherRepository teacherRepository;
+
+    private final WaitlistRepository waitlistRepository;
+
+    private final SessionParticipantsCache sessionParticipantsCache;
+
+    private final SessionListSnapshot sessionListSnapshot;
+
+    private final ResponseBodyCache responseBodyCache;
+
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${oc.app.participationMaxAttempts:3}")
+    private int participationMaxAttempts = 3;
+
+    public SessionService(SessionRepository sessionRepository,
+                          UserRepository userRepository,
+                          TeacherRepository teacherRepository,
+                          WaitlistRepository waitlistRepository,
+                          SessionParticipantsCache sessionParticipantsCache,
+                          SessionListSnapshot sessionListSnapshot,
+                          ResponseBodyCache responseBodyCache,
+                          PlatformTransactionManager transactionManager) {
         this.sessionRepository = sessionRepository;
         this.userRepository = userRepository;
+        this.teacherRepository = teacherRepository;
+        this.waitlistRepository = waitlistRepository;
+        this.sessionParticipantsCache = sessionParticipantsCache;
+        this.sessionListSnapshot = sessionListSnapshot;
+        this.responseBodyCache = responseBodyCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     public Session create(Session session) {
-        return this.sessionRepository.save(session);
+        session.setVersion(null);
+        Session created = this.sessionRepository.save(withParticipantCount(session));
+        this.sessionListSnapshot.invalidate();
+        return created;
     }
 
+    @Transactional
     public void delete(Long id) {
+        this.waitlistRepository.removeSession(id);
         this.sessionRepository.deleteById(id);
+        this.sessionListSnapshot.invalidate();
+        this.responseBodyCache.evict(ResponseBodyCache.key(ResponseBodyCache.SESSION, id));
+    }
+
+    /**
+     * Session reads go through DTO projections: two queries whatever the number of sessions,
+     * and nothing enters the persistence context.
+     */
+    public List<SessionDto> findAll() {
+        return withParticipants(this.sessionRepository.findAllDtos(), this.sessionRepository.findAllParticipantIds());
+    }
+
+    /**
+     * Returns one page of sessions ordered by date then id, starting after the cursor.
+     * One extra row is read to know whether another page follows, so no count query is needed.
+     * The page ids come from the index alone; only the sessions of the page are then read with their participants.
+     */
+    public Slice<SessionDto> findPage(Date from, Date to, SessionCursor after, Integer size) {
+        int pageSize = size != null ? size : DEFAULT_PAGE_SIZE;
+        if (pageSize < 1) {
+            throw new BadRequestException();
+        }
+        pageSize = Math.min(pageSize, MAX_PAGE_SIZE);
+
+        Date lower = from != null ? from : EARLIEST;
+        Date upper = to != null ? to : LATEST;
+        PageRequest limit = PageRequest.of(0, pageSize + 1);
+        List<Long> ids = after == null
+                ? this.sessionRepository.findPageIds(lower, upper, limit)
+                : this.sessionRepository.findPageIdsAfter(lower, upper, after.getDate(), after.getId(), limit);
+
+        boolean hasNext = ids.size() > pageSize;
+        List<Long> pageIds = hasNext ? ids.subList(0, pageSize) : ids;
+        List<SessionDto> sessions = pageIds.isEmpty()
+                ? Collections.emptyList()
+                : withParticipants(this.sessionRepository.findDtosByIdIn(pageIds),
+                        this.sessionRepository.findParticipantIds(pageIds));
+        return new SliceImpl<>(sessions, PageRequest.of(0, pageSize), hasNext);
+    }
+
+    public SessionDto getById(Long id) {
+        SessionDto session = this.sessionRepository.findDtoById(id).orElse(null);
+        if (session == null) {
+            return null;
+        }
+        return withParticipants(Collections.singletonList(session),
+                this.sessionRepository.findParticipantIds(Collections.singletonList(id))).get(0);
+    }
+
+    /**
+     * Validators of the session for conditional GETs, read without loading it; null when it does not exist.
+     */
+    public ResourceVersion getVersion(Long id) {
+        return this.sessionRepository.findResourceVersionById(id).orElse(null);
     }
 
-    public List<Session> findAll() {
-        return this.sessionRepository.findAll();
+    public ResourceVersion getCollectionVersion() {
+        return this.sessionRepository.findCollectionVersion();
     }
 
-    public Session getById(Long id) {
-        return this.sessionRepository.findById(id).orElse(null);
+    public boolean exists(Long id) {
+        return this.sessionRepository.existsById(id);
     }
 
+    /**
+     * Saves the session only if it has not changed since the version the caller read; a concurrent edit or
+     * booking in between fails with an {@link org.springframework.dao.OptimisticLockingFailureException}.
+     * Callers that do not send a version are checked against the version current at the time of the update.
+     * The session must exist: an unknown id is refused rather than inserted as a new session.
+     */
+    @Transactional
     public Session update(Long id, Session session) {
-        session.setId(id);
-        return this.sessionRepository.save(session);
+        Long current = this.sessionRepository.findVersionById(id).orElseThrow(NotFoundException::new);
+        if (session.getVersion() != null && !session.getVersion().equals(current)) {
+            throw new ObjectOptimisticLockingFailureException(Session.class, id);
+        }
+        session.setId(id).setVersion(current);
+        Session updated = this.sessionRepository.save(withParticipantCount(session));
+        this.sessionListSnapshot.invalidate();
+        this.responseBodyCache.evict(ResponseBodyCache.key(ResponseBodyCache.SESSION, id));
+        return updated;
     }
 
-    public void participate(Long id, Long userId) {
-        Session session = this.sessionRepository.findById(id).orElse(null);
-        User user = this.userRepository.findById(userId).orElse(null);
-        if (session == null || user == null) {
-            throw new NotFoundException();
+    /**
+     * Applies only the fields present in the patch to the managed session, so that the UPDATE carries the
+     * changed columns alone. A participant list is compared with the stored one and only the difference is
+     * written to PARTICIPATE, row by row; an unchanged list leaves the join table untouched. The participant
+     * count is then read back from PARTICIPATE, so that it matches the rows actually stored.
+     */
+    @Transactional
+    public void patch(Long id, SessionPatchDto patch) {
+        Set<Long> users = patch.getUsers() != null ? new LinkedHashSet<>(patch.getUsers()) : null;
+        if (users != null && users.contains(null)) {
+            throw new BadRequestException();
+        }
+
+        Session session = this.sessionRepository.findById(id).orElseThrow(NotFoundException::new);
+        if (patch.getVersion() != null && !patch.getVersion().equals(session.getVersion())) {
+            throw new ObjectOptimisticLockingFailureException(Session.class, id);
+        }
+
+        if (patch.getName() != null) {
+            session.setName(patch.getName());
+        }
+        if (patch.getDate() != null) {
+            session.setDate(patch.getDate());
+        }
+        if (patch.getDescription() != null) {
+            session.setDescription(patch.getDescription());
+        }
+        if (patch.getCapacity() != null) {
+            session.setCapacity(patch.getCapacity());
+        }
+        if (patch.getTeacher_id() != null
+                && (session.getTeacher() == null || !patch.getTeacher_id().equals(session.getTeacher().getId()))) {
+            if (!this.teacherRepository.existsById(patch.getTeacher_id())) {
+                throw new BadRequestException();
+            }
+            session.setTeacher(this.teacherRepository.getById(patch.getTeacher_id()));
         }
 
-        boolean alreadyParticipate = session.getUsers().stream().anyMatch(o -> o.getId().equals(userId));
-        if(alreadyParticipate) {
+        Set<Long> currentUsers = users != null ? participantIds(id) : Collections.emptySet();
+        if (users != null && !users.equals(currentUsers)) {
+            for (Long userId : currentUsers) {
+                if (!users.contains(userId)) {
+                    this.sessionRepository.removeParticipant(id, userId);
+                }
+            }
+            for (Long userId : users) {
+                if (!currentUsers.contains(userId) && this.sessionRepository.addParticipant(id, userId) == 0) {
+                    throw new BadRequestException();
+                }
+            }
+            // The join table is not a column of the session: touching updated_at gets the row written,
+            // so the version is checked and incremented like for any other change.
+            session.setParticipantCount(this.sessionRepository.countParticipants(id)).setUpdatedAt(LocalDateTime.now());
+            this.sessionParticipantsCache.evict(id);
+        }
+        if (session.getCapacity() != null && session.getParticipantCount() > session.getCapacity()) {
             throw new BadRequestException();
         }
 
-        session.getUsers().add(user);
+        this.sessionListSnapshot.invalidate();
+        this.responseBodyCache.evict(ResponseBodyCache.key(ResponseBodyCache.SESSION, id));
+    }
+
+    /**
+     * Books a seat with two single-row statements and without loading the session's participants:
+     * a conditional update claims the seat while the session is not full, then a conditional insert
+     * adds the participation. The claim locks the session row until commit, so concurrent bookings
+     * of a popular session queue on it instead of overbooking; any failure rolls the claim back.
+     * Existence is only checked on the failure paths, to pick the right status.
+     */
+    public void participate(Long id, Long userId) {
+        withRetry(() -> book(id, userId));
+        this.sessionListSnapshot.invalidate();
+        this.responseBodyCache.evict(ResponseBodyCache.key(ResponseBodyCache.SESSION, id));
+    }
+
+    private void book(Long id, Long userId) {
+        if (this.sessionRepository.claimSeat(id) == 0) {
+            if (!this.sessionRepository.existsById(id)) {
+                throw new NotFoundException();
+            }
+            throw new ConflictException();
+        }
+
+        int inserted;
+        try {
+            inserted = this.sessionRepository.addParticipant(id, userId);
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent request inserted the same pair first: the unique constraint rejected this one.
+            throw new BadRequestException();
+        }
+        if (inserted > 0) {
+            this.sessionParticipantsCache.evict(id);
+            return;
+        }
 
-        this.sessionRepository.save(session);
+        if (!this.userRepository.existsById(userId)) {
+            throw new NotFoundException();
+        }
+        throw new BadRequestException();
     }
 
     public void noLongerParticipate(Long id, Long userId) {
-        Session session = this.sessionRepository.findById(id).orElse(null);
-        if (session == null) {
+        withRetry(() -> cancel(id, userId));
+        this.sessionListSnapshot.invalidate();
+        this.responseBodyCache.evict(ResponseBodyCache.key(ResponseBodyCache.SESSION, id));
+    }
+
+    private void cancel(Long id, Long userId) {
+        if (this.sessionRepository.removeParticipant(id, userId) > 0) {
+            this.sessionRepository.releaseSeat(id);
+            promoteNext(id);
+            this.sessionParticipantsCache.evict(id);
+            return;
+        }
+
+        if (!this.sessionRepository.existsById(id)) {
+            throw new NotFoundException();
+        }
+        throw new BadRequestException();
+    }
+
+    /**
+     * Queues the user for a seat in a full session. Users already participating, and sessions that
+     * still have a free seat, are refused: the user can book directly.
+     */
+    @Transactional
+    public void joinWaitlist(Long id, Long userId) {
+        if (!this.sessionRepository.existsById(id) || !this.userRepository.existsById(userId)) {
+            throw new NotFoundException();
+        }
+        if (!this.sessionRepository.isFull(id) || this.sessionRepository.countParticipant(id, userId) > 0) {
+            throw new BadRequestException();
+        }
+
+        try {
+            this.waitlistRepository.saveAndFlush(WaitlistEntry.builder().sessionId(id).userId(userId).build());
+        } catch (DataIntegrityViolationException e) {
+            // Already waiting: the unique constraint rejected the second entry.
+            throw new BadRequestException();
+        }
+    }
+
+    @Transactional
+    public void leaveWaitlist(Long id, Long userId) {
+        if (this.waitlistRepository.removeUser(id, userId) > 0) {
+            return;
+        }
+
+        if (!this.sessionRepository.existsById(id)) {
             throw new NotFoundException();
         }
+        throw new BadRequestException();
+    }
+
+    /**
+     * Hands the seat just released to the first waiting user who can still take it, in the transaction
+     * of the cancellation. Candidates are read from WAITLIST, so every node sees the same queue; deleting
+     * their row is what confirms them, so an entry already served by a concurrent promotion is skipped.
+     */
+    private void promoteNext(Long id) {
+        WaitlistEntry candidate = this.waitlistRepository.findFirstBySessionIdOrderById(id).orElse(null);
+        if (candidate == null || this.sessionRepository.claimSeat(id) == 0) {
+            return;
+        }
+
+        boolean promoted = false;
+        while (candidate != null && !promoted) {
+            promoted = this.waitlistRepository.removeEntry(candidate.getId()) > 0
+                    && this.sessionRepository.addParticipant(id, candidate.getUserId()) > 0;
+            candidate = promoted ? null : this.waitlistRepository
+                    .findFirstBySessionIdAndIdGreaterThanOrderById(id, candidate.getId()).orElse(null);
+        }
+
+        if (!promoted) {
+            this.sessionRepository.releaseSeat(id);
+        }
+    }
+
+    /**
+     * Runs a participation change in a transaction of its own, and runs it again in a new one when it lost
+     * a race for a lock or a version, so that a burst on a hot session does not turn into errors.
+     * Once the attempts are exhausted the failure is rethrown, to be reported as a conflict.
+     */
+    private void withRetry(Runnable change) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                this.transactionTemplate.executeWithoutResult(status -> change.run());
+                return;
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= this.participationMaxAttempts) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(RETRY_BACKOFF_MS * attempt) + 1);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
 
-        boolean alreadyParticipate = session.getUsers().stream().anyMatch(o -> o.getId().equals(userId));
-        if(!alreadyParticipate) {
+    /**
+     * Sessions written as a whole replace their participants, so the counter used by the booking
+     * path is recomputed here, and a participant list larger than the capacity is refused.
+     */
+    private Session withParticipantCount(Session session) {
+        int participantCount = session.getUsers() != null ? session.getUsers().size() : 0;
+        if (session.getCapacity() != null && participantCount > session.getCapacity()) {
             throw new BadRequestException();
         }
+        return session.setParticipantCount(participantCount);
+    }
 
-        session.setUsers(session.getUsers().stream().filter(user -> !user.getId().equals(userId)).collect(Collectors.toList()));
+    private Set<Long> participantIds(Long id) {
+        Set<Long> userIds = new HashSet<>();
+        for (Object[] participant : this.sessionRepository.findParticipantIds(Collections.singletonList(id))) {
+            userIds.add(((Number) participant[1]).longValue());
+        }
+        return userIds;
+    }
 
-        this.sessionRepository.save(session);
+    static List<SessionDto> withParticipants(List<SessionDto> sessions, List<Object[]> participants) {
+        Map<Long, List<Long>> userIdsBySession = new HashMap<>();
+        for (Object[] participant : participants) {
+            userIdsBySession
+                    .computeIfAbsent(((Number) participant[0]).longValue(), sessionId -> new ArrayList<>())
+                    .add(((Number) participant[1]).longValue());
+        }
+
+        for (SessionDto session : sessions) {
+            session.setUsers(userIdsBySession.getOrDefault(session.getId(), new ArrayList<>()));
+        }
+        return sessions;
     }
 }
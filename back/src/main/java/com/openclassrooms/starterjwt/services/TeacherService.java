@@ -1,24 +1,105 @@
 package com.openclassrooms.starterjwt.services;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.openclassrooms.starterjwt.dto.ResourceVersion;
 import com.openclassrooms.starterjwt.models.Teacher;
 import com.openclassrooms.starterjwt.repository.TeacherRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Serves the teacher catalogue from memory: teachers change rarely and are read on every session write.
+ * The catalogue is loaded when the application starts. Once older than the TTL, an entry is reloaded in the
+ * background on its next read, which is still answered from the previous copy, so steady-state reads never
+ * wait for the database. Unknown ids are not cached. Cached teachers are shared and must not be modified.
+ * The application has no endpoint that writes teachers: they are maintained in the database, and a change
+ * made there is served after at most one TTL (oc.app.teacherCacheTtlMs), plus the time until the next read.
+ */
 @Service
+@Log4j2
 public class TeacherService {
+    private static final String CATALOGUE = "all";
+
     private final TeacherRepository teacherRepository;
 
-    public TeacherService(TeacherRepository teacherRepository) {
+    private final LoadingCache<Long, Teacher> teachers;
+
+    private final LoadingCache<String, List<Teacher>> catalogue;
+
+    public TeacherService(TeacherRepository teacherRepository,
+                          MeterRegistry meterRegistry,
+                          @Value("${oc.app.teacherCacheTtlMs:3600000}") long ttlMs,
+                          @Value("${oc.app.teacherCacheMaxSize:1000}") long maxSize) {
         this.teacherRepository = teacherRepository;
+        this.teachers = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .refreshAfterWrite(ttlMs, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build(id -> this.teacherRepository.findById(id).orElse(null));
+        this.catalogue = Caffeine.newBuilder()
+                .maximumSize(1)
+                .refreshAfterWrite(ttlMs, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build(key -> loadCatalogue());
+
+        CaffeineCacheMetrics.monitor(meterRegistry, this.teachers, "teachers");
+        CaffeineCacheMetrics.monitor(meterRegistry, this.catalogue, "teacherCatalogue");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            log.info("Teacher catalogue loaded with {} teachers", this.catalogue.get(CATALOGUE).size());
+        } catch (RuntimeException e) {
+            log.warn("Teacher catalogue could not be preloaded, it will be loaded on first use", e);
+        }
     }
 
     public List<Teacher> findAll() {
-        return this.teacherRepository.findAll();
+        return this.catalogue.get(CATALOGUE);
     }
 
     public Teacher findById(Long id) {
-        return this.teacherRepository.findById(id).orElse(null);
+        return this.teachers.get(id);
+    }
+
+    /**
+     * Validators of the teacher for conditional GETs, taken from the cached copy that the body is served from;
+     * null when it does not exist.
+     */
+    public ResourceVersion getVersion(Long id) {
+        Teacher teacher = findById(id);
+        return teacher != null ? new ResourceVersion(teacher.getId(), teacher.getUpdatedAt()) : null;
+    }
+
+    /**
+     * Validators of the cached catalogue: its size catches deletions, the last update time any edit.
+     */
+    public ResourceVersion getCollectionVersion() {
+        List<Teacher> all = findAll();
+        LocalDateTime lastModified = all.stream()
+                .map(Teacher::getUpdatedAt)
+                .filter(Objects::nonNull)
+                .max(LocalDateTime::compareTo)
+                .orElse(null);
+        return new ResourceVersion((long) all.size(), lastModified);
+    }
+
+    private List<Teacher> loadCatalogue() {
+        List<Teacher> all = this.teacherRepository.findAll();
+        all.forEach(teacher -> this.teachers.put(teacher.getId(), teacher));
+        return Collections.unmodifiableList(all);
     }
 }
@@ -1,22 +1,79 @@
 package com.openclassrooms.starterjwt.services;
 
+import com.openclassrooms.starterjwt.dto.ResourceVersion;
+import com.openclassrooms.starterjwt.exception.BadRequestException;
 import com.openclassrooms.starterjwt.models.User;
 import com.openclassrooms.starterjwt.repository.UserRepository;
+import com.openclassrooms.starterjwt.security.jwt.UserRevocationList;
+import com.openclassrooms.starterjwt.security.services.UserDetailsServiceImpl;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
 @Service
 public class UserService {
     private final UserRepository userRepository;
 
-    public UserService(UserRepository userRepository) {
+    private final UserRevocationList userRevocationList;
+
+    private final UserDetailsServiceImpl userDetailsService;
+
+    private final ResponseBodyCache responseBodyCache;
+
+    public UserService(UserRepository userRepository,
+                       UserRevocationList userRevocationList,
+                       UserDetailsServiceImpl userDetailsService,
+                       ResponseBodyCache responseBodyCache) {
         this.userRepository = userRepository;
+        this.userRevocationList = userRevocationList;
+        this.userDetailsService = userDetailsService;
+        this.responseBodyCache = responseBodyCache;
     }
 
     public void delete(Long id) {
         this.userRepository.deleteById(id);
+        this.userRevocationList.revoke(id);
+        this.userDetailsService.evictUser(id);
+        this.responseBodyCache.evict(ResponseBodyCache.key(ResponseBodyCache.USER, id));
     }
 
     public User findById(Long id) {
         return this.userRepository.findById(id).orElse(null);
     }
+
+    /**
+     * Validators of the user, read without loading it; null when it does not exist.
+     */
+    public ResourceVersion getVersion(Long id) {
+        return this.userRepository.findResourceVersionById(id).orElse(null);
+    }
+
+    /**
+     * Loads every referenced user with a single query, keeping the order of the given ids.
+     * Throws a {@link BadRequestException} when one of the ids does not match any user.
+     */
+    public List<User> findAllById(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Set<Long> distinctIds = new LinkedHashSet<>(ids);
+        if (distinctIds.contains(null)) {
+            throw new BadRequestException();
+        }
+
+        Map<Long, User> usersById = this.userRepository.findAllById(distinctIds).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        if (!usersById.keySet().containsAll(distinctIds)) {
+            throw new BadRequestException();
+        }
+
+        return distinctIds.stream().map(usersById::get).collect(Collectors.toList());
+    }
 }
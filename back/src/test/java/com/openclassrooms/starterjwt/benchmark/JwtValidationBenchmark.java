@@ -0,0 +1,87 @@
+package com.openclassrooms.starterjwt.benchmark;
+
+import com.openclassrooms.starterjwt.security.jwt.JwtTokenCache;
+import com.openclassrooms.starterjwt.security.jwt.JwtUtils;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-request cost of the token checks done by the authentication filter.
+ * Not part of the unit test run: start it through the main method once the test classes are compiled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtValidationBenchmark {
+
+    private static final String SECRET = "openclassrooms";
+
+    private JwtUtils jwtUtils;
+
+    private JwtTokenCache jwtTokenCache;
+
+    private String token;
+
+    @Setup
+    public void setUp() throws Exception {
+        jwtUtils = new JwtUtils();
+        ReflectionTestUtils.setField(jwtUtils, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(jwtUtils, "jwtExpirationMs", 86400000);
+        ReflectionTestUtils.setField(jwtUtils, "jwtKeyId", "primary");
+        jwtUtils.init();
+        jwtTokenCache = new JwtTokenCache(jwtUtils, new SimpleMeterRegistry(), 10000);
+
+        token = Jwts.builder()
+                .setSubject("yoga@studio.com")
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + 86400000))
+                .signWith(SignatureAlgorithm.HS512, SECRET)
+                .compact();
+    }
+
+    /**
+     * Previous implementation: a new parser and a key derived from the string secret on every call.
+     */
+    @Benchmark
+    public String legacyParserPerCall() {
+        return Jwts.parser().setSigningKey(SECRET).parseClaimsJws(token).getBody().getSubject();
+    }
+
+    @Benchmark
+    public String validateThenGetUserName() {
+        if (jwtUtils.validateJwtToken(token)) {
+            return jwtUtils.getUserNameFromJwtToken(token);
+        }
+        return null;
+    }
+
+    @Benchmark
+    public String singlePassValidate() {
+        return jwtUtils.validate(token).getClaims().getSubject();
+    }
+
+    @Benchmark
+    public String cachedValidate() {
+        return jwtTokenCache.validate(token).getClaims().getSubject();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(JwtValidationBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,185 @@
+package com.openclassrooms.starterjwt.benchmark;
+
+import com.openclassrooms.starterjwt.SpringBootSecurityJwtApplication;
+import com.openclassrooms.starterjwt.mapper.SessionMapper;
+import com.openclassrooms.starterjwt.models.Session;
+import com.openclassrooms.starterjwt.models.Teacher;
+import com.openclassrooms.starterjwt.models.User;
+import com.openclassrooms.starterjwt.repository.SessionRepository;
+import com.openclassrooms.starterjwt.repository.TeacherRepository;
+import com.openclassrooms.starterjwt.repository.UserRepository;
+import com.openclassrooms.starterjwt.services.SessionService;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Measures, per session read, the SQL statements issued, the entities hydrated and the heap allocated,
+ * against an H2 database seeded with sessions that each have many participants.
+ * The "eager" scenarios replay what the former {@code FetchType.EAGER} mapping loaded: every session
+ * followed by one participant query per session, with each participant fully hydrated. The "fetch graph"
+ * scenarios load the same entities in one joined query, and the "projection" scenarios are the DTO read
+ * path used by the endpoints.
+ * Not part of the unit test run: start it through the main method once the test classes are compiled.
+ */
+public class SessionFetchBenchmark {
+
+    private static final int SESSIONS = 200;
+
+    private static final int USERS = 100;
+
+    private static final int PARTICIPANTS_PER_SESSION = 20;
+
+    private static final int PAGE_SIZE = 20;
+
+    private static final int WARMUP = 50;
+
+    private static final int ITERATIONS = 200;
+
+    private final ConfigurableApplicationContext context;
+
+    private final SessionRepository sessionRepository;
+
+    private final SessionService sessionService;
+
+    private final SessionMapper sessionMapper;
+
+    private final EntityManager entityManager;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Statistics statistics;
+
+    private Long sessionId;
+
+    SessionFetchBenchmark(ConfigurableApplicationContext context) {
+        this.context = context;
+        this.sessionRepository = context.getBean(SessionRepository.class);
+        this.sessionService = context.getBean(SessionService.class);
+        this.sessionMapper = context.getBean(SessionMapper.class);
+        this.entityManager = context.getBean(EntityManager.class);
+        this.transactionTemplate = context.getBean(TransactionTemplate.class);
+        this.statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+    }
+
+    public static void main(String[] args) {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(SpringBootSecurityJwtApplication.class)
+                .profiles("test")
+                .properties("server.port=0", "spring.jpa.show-sql=false", "logging.level.root=WARN")
+                .run(args);
+        try {
+            SessionFetchBenchmark benchmark = new SessionFetchBenchmark(context);
+            benchmark.seed();
+            benchmark.run();
+        } finally {
+            context.close();
+        }
+    }
+
+    void seed() {
+        Teacher teacher = context.getBean(TeacherRepository.class)
+                .save(Teacher.builder().firstName("Margot").lastName("Delahaye").build());
+
+        UserRepository userRepository = context.getBean(UserRepository.class);
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            users.add(userRepository.save(User.builder()
+                    .email("user" + i + "@studio.com")
+                    .firstName("First" + i)
+                    .lastName("Last" + i)
+                    .password("$2a$10$.Hsa/ZjUVaHqi0tp9xieMeewrnZxrZ5pQRzddUXE/WjDu2ZThe6Iq")
+                    .admin(false)
+                    .build()));
+        }
+
+        for (int i = 0; i < SESSIONS; i++) {
+            List<User> participants = new ArrayList<>();
+            for (int j = 0; j < PARTICIPANTS_PER_SESSION; j++) {
+                participants.add(users.get((i + j) % USERS));
+            }
+            sessionId = sessionRepository.save(Session.builder()
+                    .name("Session " + i)
+                    .description("Description of session " + i)
+                    .date(new Date(1_700_000_000_000L + i * 3_600_000L))
+                    .teacher(teacher)
+                    .users(participants)
+                    .build()).getId();
+        }
+    }
+
+    void run() {
+        System.out.printf("%-22s %12s %12s %16s%n", "scenario", "statements", "entities", "allocated bytes");
+        measure("list (eager)", () -> inTransaction(() -> {
+            List<Session> sessions = entityManager
+                    .createQuery("select s from Session s", Session.class)
+                    .getResultList();
+            sessions.forEach(session -> Hibernate.initialize(session.getUsers()));
+            return sessionMapper.toDto(sessions);
+        }));
+        measure("list (fetch graph)", () -> inTransaction(() -> sessionMapper.toDto(entityManager
+                .createQuery("select distinct s from Session s left join fetch s.users", Session.class)
+                .getResultList())));
+        measure("list (projection)", () -> sessionService.findAll());
+        measure("page (eager)", () -> inTransaction(() -> {
+            List<Session> sessions = entityManager
+                    .createQuery("select s from Session s order by s.date, s.id", Session.class)
+                    .setMaxResults(PAGE_SIZE + 1)
+                    .getResultList();
+            sessions.forEach(session -> Hibernate.initialize(session.getUsers()));
+            return sessionMapper.toDto(sessions);
+        }));
+        measure("page (projection)", () -> sessionService.findPage(null, null, null, PAGE_SIZE).getContent());
+        measure("detail (eager)", () -> inTransaction(() -> {
+            Session session = entityManager.find(Session.class, sessionId);
+            Hibernate.initialize(session.getUsers());
+            return sessionMapper.toDto(session);
+        }));
+        measure("detail (fetch graph)", () -> inTransaction(() -> sessionMapper.toDto(entityManager
+                .createQuery("select s from Session s left join fetch s.users where s.id = :id", Session.class)
+                .setParameter("id", sessionId)
+                .getSingleResult())));
+        measure("detail (projection)", () -> sessionService.getById(sessionId));
+        measure("exists (eager)", () -> inTransaction(() -> {
+            Session session = entityManager.find(Session.class, sessionId);
+            Hibernate.initialize(session.getUsers());
+            return session;
+        }));
+        measure("exists (lazy)", () -> sessionService.exists(sessionId));
+    }
+
+    private <T> T inTransaction(Supplier<T> work) {
+        return transactionTemplate.execute(status -> work.get());
+    }
+
+    private void measure(String scenario, Supplier<?> request) {
+        for (int i = 0; i < WARMUP; i++) {
+            request.get();
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        statistics.clear();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            request.get();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.printf("%-22s %12d %12d %16d%n",
+                scenario,
+                statistics.getPrepareStatementCount() / ITERATIONS,
+                statistics.getEntityLoadCount() / ITERATIONS,
+                allocated / ITERATIONS);
+    }
+}
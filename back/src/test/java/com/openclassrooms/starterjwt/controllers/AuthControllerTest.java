@@ -6,7 +6,13 @@ import com.openclassrooms.starterjwt.payload.request.SignupRequest;
 import com.openclassrooms.starterjwt.payload.response.JwtResponse;
 import com.openclassrooms.starterjwt.payload.response.MessageResponse;
 import com.openclassrooms.starterjwt.repository.UserRepository;
+import com.openclassrooms.starterjwt.payload.request.RefreshTokenRequest;
+import com.openclassrooms.starterjwt.security.jwt.JwtClaims;
 import com.openclassrooms.starterjwt.security.jwt.JwtUtils;
+import com.openclassrooms.starterjwt.security.jwt.JwtValidationResult;
+import com.openclassrooms.starterjwt.security.jwt.TokenRevocationIndex;
+import com.openclassrooms.starterjwt.security.services.AuthenticationExecutor;
+import com.openclassrooms.starterjwt.security.services.UserDetailsServiceImpl;
 import com.openclassrooms.starterjwt.security.services.UserDetailsImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -14,13 +20,16 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
-import java.util.Optional;
+import java.util.Date;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
@@ -42,6 +51,15 @@ class AuthControllerTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private AuthenticationExecutor authenticationExecutor;
+
+    @Mock
+    private UserDetailsServiceImpl userDetailsService;
+
+    @Mock
+    private TokenRevocationIndex tokenRevocationIndex;
+
     @InjectMocks
     private AuthController authController;
 
@@ -57,6 +75,12 @@ class AuthControllerTest {
         userDetails = new UserDetailsImpl(1L, "test@example.com", "John", "Doe", false, "password");
     }
 
+    @SuppressWarnings("unchecked")
+    private void runAuthenticationOnCallerThread() {
+        when(authenticationExecutor.authenticate(any()))
+                .thenAnswer(invocation -> ((Supplier<Authentication>) invocation.getArgument(0)).get());
+    }
+
     @Test
     void authenticateUser_ValidCredentials_ShouldReturnJwtToken() {
         // Given - A valid login request with correct credentials
@@ -65,12 +89,13 @@ class AuthControllerTest {
         loginRequest.setPassword("password");
 
         // Mocking dependencies to simulate successful authentication
+        runAuthenticationOnCallerThread();
         Authentication authentication = mock(Authentication.class);
         when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
                 .thenReturn(authentication);
         when(authentication.getPrincipal()).thenReturn(userDetails);
         when(jwtUtils.generateJwtToken(authentication)).thenReturn("mocked-jwt-token");
-        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
+        when(jwtUtils.generateRefreshToken(userDetails)).thenReturn("mocked-refresh-token");
 
         // When - The user attempts to authenticate
         ResponseEntity<?> response = authController.authenticateUser(loginRequest);
@@ -80,11 +105,36 @@ class AuthControllerTest {
         assertThat(response.getBody()).isInstanceOf(JwtResponse.class);
         JwtResponse jwtResponse = (JwtResponse) response.getBody();
         assertThat(jwtResponse.getToken()).isEqualTo("mocked-jwt-token");
+        assertThat(jwtResponse.getRefreshToken()).isEqualTo("mocked-refresh-token");
         assertThat(jwtResponse.getUsername()).isEqualTo("test@example.com");
 
         verify(authenticationManager, times(1)).authenticate(any(UsernamePasswordAuthenticationToken.class));
         verify(jwtUtils, times(1)).generateJwtToken(authentication);
-        verify(userRepository, times(1)).findByEmail("test@example.com");
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void authenticateUser_AdminUser_ShouldTakeAdminFlagFromAuthenticatedPrincipal() {
+        // Given - An admin whose details were loaded during authentication
+        LoginRequest loginRequest = new LoginRequest();
+        loginRequest.setEmail("admin@example.com");
+        loginRequest.setPassword("password");
+
+        runAuthenticationOnCallerThread();
+        Authentication authentication = mock(Authentication.class);
+        when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
+                .thenReturn(authentication);
+        when(authentication.getPrincipal())
+                .thenReturn(new UserDetailsImpl(2L, "admin@example.com", "Ada", "Admin", true, "password"));
+        when(jwtUtils.generateJwtToken(authentication)).thenReturn("mocked-jwt-token");
+
+        // When - The admin authenticates
+        ResponseEntity<?> response = authController.authenticateUser(loginRequest);
+
+        // Then - The admin flag is set without loading the user again
+        JwtResponse jwtResponse = (JwtResponse) response.getBody();
+        assertThat(jwtResponse.getAdmin()).isTrue();
+        verifyNoInteractions(userRepository);
     }
 
     @Test
@@ -95,6 +145,7 @@ class AuthControllerTest {
         loginRequest.setPassword("wrongPassword");
 
         // Mocking authentication failure
+        runAuthenticationOnCallerThread();
         when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
                 .thenThrow(new RuntimeException("Invalid credentials"));
 
@@ -108,6 +159,112 @@ class AuthControllerTest {
         verifyNoInteractions(userRepository);
     }
 
+    @Test
+    void authenticateUser_LoginPoolSaturated_ShouldReturnServiceUnavailable() {
+        // Given - A login request while the login pool rejects new work
+        LoginRequest loginRequest = new LoginRequest();
+        loginRequest.setEmail("test@example.com");
+        loginRequest.setPassword("password");
+        when(authenticationExecutor.authenticate(any())).thenThrow(new RejectedExecutionException("saturated"));
+
+        // When - The user attempts to authenticate
+        ResponseEntity<?> response = authController.authenticateUser(loginRequest);
+
+        // Then - The request is rejected right away with a retry hint
+        assertThat(response.getStatusCodeValue()).isEqualTo(503);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertThat(response.getBody()).isInstanceOf(MessageResponse.class);
+        verifyNoInteractions(authenticationManager);
+        verifyNoInteractions(jwtUtils);
+    }
+
+    private RefreshTokenRequest refreshRequest(String token) {
+        RefreshTokenRequest refreshRequest = new RefreshTokenRequest();
+        refreshRequest.setRefreshToken(token);
+        return refreshRequest;
+    }
+
+    private JwtClaims refreshClaims(Date expiration) {
+        return JwtClaims.builder()
+                .subject("test@example.com")
+                .id(1L)
+                .tokenId("refresh-jti")
+                .tokenType(JwtClaims.REFRESH_TOKEN)
+                .expiration(expiration)
+                .build();
+    }
+
+    @Test
+    void refreshToken_ValidRefreshToken_ShouldRotateTokens() {
+        // Given - A valid refresh token that was never redeemed
+        Date expiration = new Date(System.currentTimeMillis() + 60_000);
+        when(jwtUtils.validate("refresh-token")).thenReturn(JwtValidationResult.valid(refreshClaims(expiration)));
+        when(userDetailsService.loadUserByUsername("test@example.com")).thenReturn(userDetails);
+        when(tokenRevocationIndex.revoke("refresh-jti", expiration)).thenReturn(true);
+        when(jwtUtils.generateJwtToken(userDetails)).thenReturn("new-access-token");
+        when(jwtUtils.generateRefreshToken(userDetails)).thenReturn("new-refresh-token");
+
+        // When - The refresh token is exchanged
+        ResponseEntity<?> response = authController.refreshToken(refreshRequest("refresh-token"));
+
+        // Then - A new token pair is returned and the old refresh token is revoked
+        assertThat(response.getStatusCodeValue()).isEqualTo(200);
+        JwtResponse jwtResponse = (JwtResponse) response.getBody();
+        assertThat(jwtResponse.getToken()).isEqualTo("new-access-token");
+        assertThat(jwtResponse.getRefreshToken()).isEqualTo("new-refresh-token");
+        assertThat(jwtResponse.getId()).isEqualTo(1L);
+        verify(tokenRevocationIndex).revoke("refresh-jti", expiration);
+    }
+
+    @Test
+    void refreshToken_AlreadyRedeemedToken_ShouldReturnUnauthorized() {
+        // Given - A refresh token whose id is already revoked
+        Date expiration = new Date(System.currentTimeMillis() + 60_000);
+        when(jwtUtils.validate("refresh-token")).thenReturn(JwtValidationResult.valid(refreshClaims(expiration)));
+        when(userDetailsService.loadUserByUsername("test@example.com")).thenReturn(userDetails);
+        when(tokenRevocationIndex.revoke("refresh-jti", expiration)).thenReturn(false);
+
+        // When - The refresh token is replayed
+        ResponseEntity<?> response = authController.refreshToken(refreshRequest("refresh-token"));
+
+        // Then - No new token is issued
+        assertThat(response.getStatusCodeValue()).isEqualTo(401);
+        verify(jwtUtils, never()).generateRefreshToken(any());
+    }
+
+    @Test
+    void refreshToken_AccessTokenInsteadOfRefreshToken_ShouldReturnUnauthorized() {
+        // Given - An access token sent to the refresh endpoint
+        JwtClaims accessClaims = JwtClaims.builder().subject("test@example.com").tokenType(JwtClaims.ACCESS_TOKEN).build();
+        when(jwtUtils.validate("access-token")).thenReturn(JwtValidationResult.valid(accessClaims));
+
+        // When - The access token is exchanged
+        ResponseEntity<?> response = authController.refreshToken(refreshRequest("access-token"));
+
+        // Then - The exchange is refused before loading the user
+        assertThat(response.getStatusCodeValue()).isEqualTo(401);
+        verifyNoInteractions(userDetailsService);
+        verifyNoInteractions(tokenRevocationIndex);
+    }
+
+    @Test
+    void logout_ShouldRevokeAccessAndRefreshTokens() {
+        // Given - A valid access token and refresh token
+        Date accessExpiration = new Date(System.currentTimeMillis() + 60_000);
+        Date refreshExpiration = new Date(System.currentTimeMillis() + 120_000);
+        JwtClaims accessClaims = JwtClaims.builder().tokenId("access-jti").expiration(accessExpiration).build();
+        when(jwtUtils.validate("access-token")).thenReturn(JwtValidationResult.valid(accessClaims));
+        when(jwtUtils.validate("refresh-token")).thenReturn(JwtValidationResult.valid(refreshClaims(refreshExpiration)));
+
+        // When - The user logs out
+        ResponseEntity<?> response = authController.logout("Bearer access-token", refreshRequest("refresh-token"));
+
+        // Then - Both tokens are revoked
+        assertThat(response.getStatusCodeValue()).isEqualTo(200);
+        verify(tokenRevocationIndex).revoke("access-jti", accessExpiration);
+        verify(tokenRevocationIndex).revoke("refresh-jti", refreshExpiration);
+    }
+
     @Test
     void registerUser_NewUser_ShouldReturnSuccessMessage() {
         // Given - A valid signup request for a new user
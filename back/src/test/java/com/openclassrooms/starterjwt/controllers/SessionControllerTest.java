@@ -1,22 +1,50 @@
 package com.openclassrooms.starterjwt.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.starterjwt.dto.ResourceVersion;
 import com.openclassrooms.starterjwt.dto.SessionDto;
+import com.openclassrooms.starterjwt.dto.SessionImportReportDto;
+import com.openclassrooms.starterjwt.dto.SessionPageDto;
+import com.openclassrooms.starterjwt.dto.SessionPatchDto;
 import com.openclassrooms.starterjwt.mapper.SessionMapper;
 import com.openclassrooms.starterjwt.models.Session;
+import com.openclassrooms.starterjwt.services.ResponseBodyCache;
+import com.openclassrooms.starterjwt.services.SessionBulkService;
+import com.openclassrooms.starterjwt.services.SessionCursor;
+import com.openclassrooms.starterjwt.services.SessionListSnapshot;
 import com.openclassrooms.starterjwt.services.SessionService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -28,11 +56,25 @@ class SessionControllerTest {
     @Mock
     private SessionMapper sessionMapper;
 
+    @Mock
+    private SessionBulkService sessionBulkService;
+
+    @Mock
+    private SessionListSnapshot sessionListSnapshot;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Spy
+    private ResponseBodyCache responseBodyCache =
+            new ResponseBodyCache(objectMapper, new SimpleMeterRegistry(), 1_000_000, 1024);
+
     @InjectMocks
     private SessionController sessionController;
 
     private Session testSession;
     private SessionDto testSessionDto;
+    private ResourceVersion testVersion;
+    private ResourceVersion testCollectionVersion;
 
     @BeforeEach
     void setUp() {
@@ -44,43 +86,81 @@ class SessionControllerTest {
         testSessionDto = new SessionDto();
         testSessionDto.setId(1L);
         testSessionDto.setName("Test Session");
+
+        testVersion = new ResourceVersion(1L, 3L, LocalDateTime.of(2024, 1, 15, 10, 0));
+        testCollectionVersion = new ResourceVersion(1L, 3L, LocalDateTime.of(2024, 1, 15, 10, 0));
+        lenient().when(sessionService.getVersion(1L)).thenReturn(testVersion);
+        lenient().when(sessionService.getCollectionVersion()).thenReturn(testCollectionVersion);
+    }
+
+    private static ServletWebRequest request(String ifNoneMatch) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/session");
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        return new ServletWebRequest(request, new MockHttpServletResponse());
     }
 
     @Test
-    void findById_ShouldReturnSession_WhenExists() {
+    void findById_ShouldReturnSession_WhenExists() throws Exception {
         // Given - The service will return the expected session when requested
-        when(sessionService.getById(1L)).thenReturn(testSession);
-        when(sessionMapper.toDto(testSession)).thenReturn(testSessionDto);
+        when(sessionService.getById(1L)).thenReturn(testSessionDto);
 
         // When - The controller's findById method is called
-        ResponseEntity<?> response = sessionController.findById("1");
+        ServletWebRequest request = request(null);
+        ResponseEntity<?> response = sessionController.findById("1", request);
 
-        // Then - The response should be OK and contain the expected session DTO
+        // Then - The response should be OK, contain the encoded session DTO read by the service and carry its tag
         assertThat(response.getStatusCodeValue()).isEqualTo(200);
-        assertThat(response.getBody()).isEqualTo(testSessionDto);
+        assertThat(response.getBody()).isEqualTo(objectMapper.writeValueAsBytes(testSessionDto));
+        assertThat(request.getResponse().getHeader(HttpHeaders.ETAG)).isEqualTo(testVersion.getETag());
+        assertThat(request.getResponse().getHeader(HttpHeaders.LAST_MODIFIED)).isNotNull();
 
         verify(sessionService, times(1)).getById(1L);
-        verify(sessionMapper, times(1)).toDto(testSession);
+        verifyNoInteractions(sessionMapper);
+    }
+
+    @Test
+    void findById_ShouldReturnNotModified_WhenTagMatches() {
+        // When - The controller's findById method is called with the current tag of the session
+        ResponseEntity<?> response = sessionController.findById("1", request(testVersion.getETag()));
+
+        // Then - The response should be 304 Not Modified and the session should not be read
+        assertThat(response.getStatusCodeValue()).isEqualTo(304);
+        assertThat(response.getBody()).isNull();
+        verify(sessionService, never()).getById(anyLong());
     }
 
     @Test
     void findById_ShouldReturnNotFound_WhenDoesNotExist() {
-        // Given - The service will return null for a non-existent session
-        when(sessionService.getById(999L)).thenReturn(null);
+        // Given - The service will return no version for a non-existent session
+        when(sessionService.getVersion(999L)).thenReturn(null);
 
         // When - The controller's findById method is called
-        ResponseEntity<?> response = sessionController.findById("999");
+        ResponseEntity<?> response = sessionController.findById("999", request(null));
 
         // Then - The response should be 404 Not Found
         assertThat(response.getStatusCodeValue()).isEqualTo(404);
-        verify(sessionService, times(1)).getById(999L);
+        verify(sessionService, never()).getById(999L);
         verifyNoInteractions(sessionMapper);
     }
 
+    @Test
+    void findById_ShouldReturnNotFound_WhenDeletedAfterVersionRead() {
+        // Given - The session disappears between the version read and the session read
+        when(sessionService.getById(1L)).thenReturn(null);
+
+        // When - The controller's findById method is called
+        ResponseEntity<?> response = sessionController.findById("1", request(null));
+
+        // Then - The response should be 404 Not Found
+        assertThat(response.getStatusCodeValue()).isEqualTo(404);
+    }
+
     @Test
     void findById_ShouldReturnBadRequest_WhenIdIsInvalid() {
         // When - The controller's findById method is called with an invalid ID
-        ResponseEntity<?> response = sessionController.findById("invalid");
+        ResponseEntity<?> response = sessionController.findById("invalid", request(null));
 
         // Then - The response should be 400 Bad Request
         assertThat(response.getStatusCodeValue()).isEqualTo(400);
@@ -90,22 +170,103 @@ class SessionControllerTest {
 
     @Test
     void findAll_ShouldReturnSessions() {
-        List<Session> sessionList = Arrays.asList(testSession);
         List<SessionDto> sessionDtoList = Arrays.asList(testSessionDto);
 
         // Given - The service will return a list of sessions
-        when(sessionService.findAll()).thenReturn(sessionList);
-        when(sessionMapper.toDto(sessionList)).thenReturn(sessionDtoList);
+        when(sessionService.findAll()).thenReturn(sessionDtoList);
 
         // When - The controller's findAll method is called
-        ResponseEntity<?> response = sessionController.findAll();
+        ServletWebRequest request = request(null);
+        ResponseEntity<?> response = sessionController.findAll(null, null, null, null, request);
 
-        // Then - The response should be OK and contain the expected session list
+        // Then - The response should be OK, contain the expected session list and carry the collection tag
         assertThat(response.getStatusCodeValue()).isEqualTo(200);
         assertThat(response.getBody()).isEqualTo(sessionDtoList);
+        assertThat(request.getResponse().getHeader(HttpHeaders.ETAG)).isEqualTo(testCollectionVersion.getETag());
 
         verify(sessionService, times(1)).findAll();
-        verify(sessionMapper, times(1)).toDto(sessionList);
+        verifyNoInteractions(sessionMapper);
+    }
+
+    @Test
+    void findAll_ShouldWriteTheSnapshot_WhenOneIsAvailable() {
+        // Given - The session list was encoded in memory
+        byte[] body = "[{\"id\":1}]".getBytes();
+        when(sessionListSnapshot.current()).thenReturn(new SessionListSnapshot.Snapshot(body, "\"list\""));
+
+        // When - The controller's findAll method is called
+        ServletWebRequest request = request(null);
+        ResponseEntity<?> response = sessionController.findAll(null, null, null, null, request);
+
+        // Then - The encoded list is written as is with its tag, and nothing is read
+        assertThat(response.getStatusCodeValue()).isEqualTo(200);
+        assertThat(response.getBody()).isSameAs(body);
+        assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+        assertThat(request.getResponse().getHeader(HttpHeaders.ETAG)).isEqualTo("\"list\"");
+        verifyNoInteractions(sessionService);
+    }
+
+    @Test
+    void findAll_ShouldReturnNotModified_WhenSnapshotTagMatches() {
+        // Given - The session list was encoded in memory
+        when(sessionListSnapshot.current()).thenReturn(new SessionListSnapshot.Snapshot(new byte[0], "\"list\""));
+
+        // When - The controller's findAll method is called with the tag of the snapshot
+        ResponseEntity<?> response = sessionController.findAll(null, null, null, null, request("\"list\""));
+
+        // Then - The response should be 304 Not Modified and nothing should be read
+        assertThat(response.getStatusCodeValue()).isEqualTo(304);
+        verifyNoInteractions(sessionService);
+    }
+
+    @Test
+    void findAll_ShouldReturnNotModified_WhenCollectionTagMatches() {
+        // When - The controller's findAll method is called with the current tag of the collection
+        ResponseEntity<?> response = sessionController.findAll(null, null, null, null,
+                request(testCollectionVersion.getETag()));
+
+        // Then - The response should be 304 Not Modified and no session should be read
+        assertThat(response.getStatusCodeValue()).isEqualTo(304);
+        verify(sessionService, never()).findAll();
+        verify(sessionService, never()).findPage(any(), any(), any(), any());
+    }
+
+    @Test
+    void findAll_ShouldReturnPageWithNextCursor_WhenPageSizeIsGiven() {
+        // Given - The service returns a full page followed by more sessions
+        testSessionDto.setDate(new Date(1_700_000_000_000L));
+        List<SessionDto> sessionDtoList = Arrays.asList(testSessionDto);
+        when(sessionService.findPage(null, null, null, 1))
+                .thenReturn(new SliceImpl<>(sessionDtoList, PageRequest.of(0, 1), true));
+
+        // When - The first page is requested
+        ResponseEntity<?> response = sessionController.findAll(1, null, null, null, request(null));
+
+        // Then - The page holds the sessions and the cursor points after the last one
+        assertThat(response.getStatusCodeValue()).isEqualTo(200);
+        SessionPageDto page = (SessionPageDto) response.getBody();
+        assertThat(page.getItems()).isEqualTo(sessionDtoList);
+        SessionCursor next = SessionCursor.parse(page.getNextCursor());
+        assertThat(next.getId()).isEqualTo(1L);
+        assertThat(next.getDate()).isEqualTo(testSessionDto.getDate());
+        verify(sessionService, never()).findAll();
+    }
+
+    @Test
+    void findAll_ShouldReturnLastPageWithoutCursor() {
+        // Given - The service returns the last page of a date range
+        Date from = new Date(1_600_000_000_000L);
+        SessionCursor cursor = new SessionCursor(new Date(1_650_000_000_000L), 4L);
+        when(sessionService.findPage(eq(from), isNull(), any(SessionCursor.class), isNull()))
+                .thenReturn(new SliceImpl<>(Arrays.asList(testSessionDto), PageRequest.of(0, 20), false));
+
+        // When - The page after the cursor is requested
+        ResponseEntity<?> response = sessionController.findAll(null, cursor.encode(), from, null, request(null));
+
+        // Then - No next cursor is returned
+        SessionPageDto page = (SessionPageDto) response.getBody();
+        assertThat(page.getItems()).hasSize(1);
+        assertThat(page.getNextCursor()).isNull();
     }
 
     @Test
@@ -140,10 +301,55 @@ class SessionControllerTest {
         verify(sessionMapper, times(1)).toEntity(any(SessionDto.class));
     }
 
+    @Test
+    void update_ShouldReturnConflict_WhenSessionChangedSinceItWasRead() {
+        // Given - The session was edited or booked since the client read it
+        when(sessionMapper.toEntity(any(SessionDto.class))).thenReturn(testSession);
+        when(sessionService.update(eq(1L), any(Session.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Session.class, 1L));
+
+        // When - The controller's update method is called
+        ResponseEntity<?> response = sessionController.update("1", testSessionDto);
+
+        // Then - The response should be Conflict
+        assertThat(response.getStatusCodeValue()).isEqualTo(409);
+        verify(sessionMapper, never()).toDto(any(Session.class));
+    }
+
+    @Test
+    void patch_ShouldReturnTheStoredSession() {
+        // Given - The service applies the patch
+        SessionPatchDto patch = new SessionPatchDto();
+        patch.setName("Evening flow");
+        when(sessionService.getById(1L)).thenReturn(testSessionDto);
+
+        // When - The controller's patch method is called
+        ResponseEntity<?> response = sessionController.patch("1", patch);
+
+        // Then - The response should be OK with the session as stored, without going through the mapper
+        assertThat(response.getStatusCodeValue()).isEqualTo(200);
+        assertThat(response.getBody()).isEqualTo(testSessionDto);
+        verify(sessionService, times(1)).patch(1L, patch);
+        verifyNoInteractions(sessionMapper);
+    }
+
+    @Test
+    void patch_ShouldReturnConflict_WhenVersionIsStale() {
+        // Given - The session changed since the client read it
+        SessionPatchDto patch = new SessionPatchDto();
+        doThrow(new ObjectOptimisticLockingFailureException(Session.class, 1L)).when(sessionService).patch(1L, patch);
+
+        // When - The controller's patch method is called
+        ResponseEntity<?> response = sessionController.patch("1", patch);
+
+        // Then - The response should be Conflict
+        assertThat(response.getStatusCodeValue()).isEqualTo(409);
+    }
+
     @Test
     void delete_ShouldDeleteSession() {
         // Given - The service will find and delete the session
-        when(sessionService.getById(1L)).thenReturn(testSession);
+        when(sessionService.exists(1L)).thenReturn(true);
         doNothing().when(sessionService).delete(1L);
 
         // When - The controller's delete method is called
@@ -152,6 +358,20 @@ class SessionControllerTest {
         // Then - The response should be OK and confirm the session deletion
         assertThat(response.getStatusCodeValue()).isEqualTo(200);
         verify(sessionService, times(1)).delete(1L);
+        verify(sessionService, never()).getById(anyLong());
+    }
+
+    @Test
+    void delete_ShouldReturnNotFound_WhenSessionDoesNotExist() {
+        // Given - The session does not exist
+        when(sessionService.exists(1L)).thenReturn(false);
+
+        // When - The controller's delete method is called
+        ResponseEntity<?> response = sessionController.save("1");
+
+        // Then - The response should be 404 and nothing is deleted
+        assertThat(response.getStatusCodeValue()).isEqualTo(404);
+        verify(sessionService, never()).delete(anyLong());
     }
 
     @Test
@@ -167,6 +387,18 @@ class SessionControllerTest {
         verify(sessionService, times(1)).participate(1L, 10L);
     }
 
+    @Test
+    void participate_ShouldReturnConflict_WhenRetriesAreExhausted() {
+        // Given - The booking keeps losing the race for the session row
+        doThrow(new CannotAcquireLockException("lock timeout")).when(sessionService).participate(1L, 10L);
+
+        // When - The controller's participate method is called
+        ResponseEntity<?> response = sessionController.participate("1", "10");
+
+        // Then - The response should be Conflict
+        assertThat(response.getStatusCodeValue()).isEqualTo(409);
+    }
+
     @Test
     void noLongerParticipate_ShouldReturnOk() {
         // Given - The service will successfully remove a participant
@@ -179,4 +411,55 @@ class SessionControllerTest {
         assertThat(response.getStatusCodeValue()).isEqualTo(200);
         verify(sessionService, times(1)).noLongerParticipate(1L, 10L);
     }
+
+    @Test
+    void joinWaitlist_ShouldReturnOk() {
+        // Given - The service will successfully queue the user
+        doNothing().when(sessionService).joinWaitlist(1L, 10L);
+
+        // When - The controller's joinWaitlist method is called
+        ResponseEntity<?> response = sessionController.joinWaitlist("1", "10");
+
+        // Then - The response should be OK
+        assertThat(response.getStatusCodeValue()).isEqualTo(200);
+        verify(sessionService, times(1)).joinWaitlist(1L, 10L);
+    }
+
+    @Test
+    void leaveWaitlist_ShouldReturnBadRequest_WhenIdIsNotNumeric() {
+        // When - The controller's leaveWaitlist method is called with an invalid id
+        ResponseEntity<?> response = sessionController.leaveWaitlist("abc", "10");
+
+        // Then - The response should be Bad Request
+        assertThat(response.getStatusCodeValue()).isEqualTo(400);
+        verifyNoInteractions(sessionService);
+    }
+
+    @Test
+    void importSessions_ShouldReturnTheReport() throws Exception {
+        // Given - The bulk service will import the body and report on it
+        InputStream body = new ByteArrayInputStream("[]".getBytes());
+        SessionImportReportDto report = new SessionImportReportDto();
+        when(sessionBulkService.importSessions(body)).thenReturn(report);
+
+        // When - The controller's importSessions method is called
+        ResponseEntity<?> response = sessionController.importSessions(body);
+
+        // Then - The response should be OK and contain the report
+        assertThat(response.getStatusCodeValue()).isEqualTo(200);
+        assertThat(response.getBody()).isEqualTo(report);
+    }
+
+    @Test
+    void exportSessions_ShouldStreamFromTheBulkService() throws Exception {
+        // When - The controller's exportSessions method is called and its body written
+        ResponseEntity<StreamingResponseBody> response = sessionController.exportSessions();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+
+        // Then - The response should be JSON written by the bulk service
+        assertThat(response.getStatusCodeValue()).isEqualTo(200);
+        assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+        verify(sessionBulkService, times(1)).exportSessions(out);
+    }
 }
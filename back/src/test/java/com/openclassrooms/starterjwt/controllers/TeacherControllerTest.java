@@ -1,17 +1,27 @@
 package com.openclassrooms.starterjwt.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.starterjwt.dto.ResourceVersion;
 import com.openclassrooms.starterjwt.dto.TeacherDto;
 import com.openclassrooms.starterjwt.mapper.TeacherMapper;
 import com.openclassrooms.starterjwt.models.Teacher;
+import com.openclassrooms.starterjwt.services.ResponseBodyCache;
 import com.openclassrooms.starterjwt.services.TeacherService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
 
+import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
 
@@ -27,11 +37,19 @@ class TeacherControllerTest {
     @Mock
     private TeacherMapper teacherMapper;
 
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Spy
+    private ResponseBodyCache responseBodyCache =
+            new ResponseBodyCache(objectMapper, new SimpleMeterRegistry(), 1_000_000, 1024);
+
     @InjectMocks
     private TeacherController teacherController;
 
     private Teacher testTeacher;
     private TeacherDto testTeacherDto;
+    private ResourceVersion testVersion;
+    private ResourceVersion testCollectionVersion;
 
     @BeforeEach
     void setUp() {
@@ -45,43 +63,85 @@ class TeacherControllerTest {
         testTeacherDto.setId(1L);
         testTeacherDto.setFirstName("John");
         testTeacherDto.setLastName("Doe");
+
+        testVersion = new ResourceVersion(1L, LocalDateTime.of(2024, 1, 15, 10, 0));
+        testCollectionVersion = new ResourceVersion(1L, LocalDateTime.of(2024, 1, 15, 10, 0));
+        lenient().when(teacherService.getVersion(1L)).thenReturn(testVersion);
+        lenient().when(teacherService.getCollectionVersion()).thenReturn(testCollectionVersion);
+    }
+
+    private static ServletWebRequest request(String ifNoneMatch) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/teacher");
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        return new ServletWebRequest(request, new MockHttpServletResponse());
     }
 
     @Test
-    void findById_ShouldReturnTeacher_WhenExists() {
+    void findById_ShouldReturnTeacher_WhenExists() throws Exception {
         // Given - The service will return the expected teacher when requested
         when(teacherService.findById(1L)).thenReturn(testTeacher);
         when(teacherMapper.toDto(testTeacher)).thenReturn(testTeacherDto);
 
         // When - The controller's findById method is called
-        ResponseEntity<?> response = teacherController.findById("1");
+        ServletWebRequest request = request(null);
+        ResponseEntity<?> response = teacherController.findById("1", request);
 
-        // Then - The response should be OK and contain the expected teacher DTO
+        // Then - The response should be OK, contain the encoded teacher DTO and carry its tag
         assertThat(response.getStatusCodeValue()).isEqualTo(200);
-        assertThat(response.getBody()).isEqualTo(testTeacherDto);
+        assertThat(response.getBody()).isEqualTo(objectMapper.writeValueAsBytes(testTeacherDto));
+        assertThat(request.getResponse().getHeader(HttpHeaders.ETAG)).isEqualTo(testVersion.getETag());
+
+        verify(teacherService, times(1)).findById(1L);
+        verify(teacherMapper, times(1)).toDto(testTeacher);
+    }
+
+    @Test
+    void findById_ShouldWriteTheEncodedBody_WhenTheVersionIsUnchanged() {
+        // Given - The teacher was already written once
+        when(teacherService.findById(1L)).thenReturn(testTeacher);
+        when(teacherMapper.toDto(testTeacher)).thenReturn(testTeacherDto);
+        ResponseEntity<?> first = teacherController.findById("1", request(null));
+
+        // When - Another client reads the same version
+        ResponseEntity<?> second = teacherController.findById("1", request(null));
 
+        // Then - The same bytes are written without mapping the teacher again
+        assertThat(second.getBody()).isSameAs(first.getBody());
         verify(teacherService, times(1)).findById(1L);
         verify(teacherMapper, times(1)).toDto(testTeacher);
     }
 
+    @Test
+    void findById_ShouldReturnNotModified_WhenTagMatches() {
+        // When - The controller's findById method is called with the current tag of the teacher
+        ResponseEntity<?> response = teacherController.findById("1", request(testVersion.getETag()));
+
+        // Then - The response should be 304 Not Modified and the teacher should not be read
+        assertThat(response.getStatusCodeValue()).isEqualTo(304);
+        verify(teacherService, never()).findById(anyLong());
+        verifyNoInteractions(teacherMapper);
+    }
+
     @Test
     void findById_ShouldReturnNotFound_WhenDoesNotExist() {
-        // Given - The service will return null for a non-existent teacher
-        when(teacherService.findById(999L)).thenReturn(null);
+        // Given - The service will return no version for a non-existent teacher
+        when(teacherService.getVersion(999L)).thenReturn(null);
 
         // When - The controller's findById method is called
-        ResponseEntity<?> response = teacherController.findById("999");
+        ResponseEntity<?> response = teacherController.findById("999", request(null));
 
         // Then - The response should be 404 Not Found
         assertThat(response.getStatusCodeValue()).isEqualTo(404);
-        verify(teacherService, times(1)).findById(999L);
+        verify(teacherService, never()).findById(999L);
         verifyNoInteractions(teacherMapper);
     }
 
     @Test
     void findById_ShouldReturnBadRequest_WhenIdIsInvalid() {
         // When - The controller's findById method is called with an invalid ID
-        ResponseEntity<?> response = teacherController.findById("invalid");
+        ResponseEntity<?> response = teacherController.findById("invalid", request(null));
 
         // Then - The response should be 400 Bad Request
         assertThat(response.getStatusCodeValue()).isEqualTo(400);
@@ -90,7 +150,7 @@ class TeacherControllerTest {
     }
 
     @Test
-    void findAll_ShouldReturnTeachers() {
+    void findAll_ShouldReturnTeachers() throws Exception {
         List<Teacher> teacherList = Arrays.asList(testTeacher);
         List<TeacherDto> teacherDtoList = Arrays.asList(testTeacherDto);
 
@@ -99,13 +159,24 @@ class TeacherControllerTest {
         when(teacherMapper.toDto(teacherList)).thenReturn(teacherDtoList);
 
         // When - The controller's findAll method is called
-        ResponseEntity<?> response = teacherController.findAll();
+        ResponseEntity<?> response = teacherController.findAll(request(null));
 
         // Then - The response should be OK and contain the expected teacher list
         assertThat(response.getStatusCodeValue()).isEqualTo(200);
-        assertThat(response.getBody()).isEqualTo(teacherDtoList);
+        assertThat(response.getBody()).isEqualTo(objectMapper.writeValueAsBytes(teacherDtoList));
 
         verify(teacherService, times(1)).findAll();
         verify(teacherMapper, times(1)).toDto(teacherList);
     }
+
+    @Test
+    void findAll_ShouldReturnNotModified_WhenCollectionTagMatches() {
+        // When - The controller's findAll method is called with the current tag of the collection
+        ResponseEntity<?> response = teacherController.findAll(request(testCollectionVersion.getETag()));
+
+        // Then - The response should be 304 Not Modified and no teacher should be read
+        assertThat(response.getStatusCodeValue()).isEqualTo(304);
+        verify(teacherService, never()).findAll();
+        verifyNoInteractions(teacherMapper);
+    }
 }
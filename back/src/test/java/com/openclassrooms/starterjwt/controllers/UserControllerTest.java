@@ -1,20 +1,28 @@
 package com.openclassrooms.starterjwt.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.starterjwt.dto.ResourceVersion;
 import com.openclassrooms.starterjwt.mapper.UserMapper;
 import com.openclassrooms.starterjwt.models.User;
+import com.openclassrooms.starterjwt.services.ResponseBodyCache;
 import com.openclassrooms.starterjwt.services.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.context.request.ServletWebRequest;
 import com.openclassrooms.starterjwt.dto.UserDto;
 
+import java.time.LocalDateTime;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
@@ -22,6 +30,8 @@ class UserControllerTest {
 
     private UserController userController;
 
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
     @Mock
     private UserService userService;
 
@@ -40,7 +50,8 @@ class UserControllerTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        userController = new UserController(userService, userMapper);
+        userController = new UserController(userService, userMapper,
+                new ResponseBodyCache(objectMapper, new SimpleMeterRegistry(), 1_000_000, 1024));
 
         SecurityContextHolder.setContext(securityContext);
         when(securityContext.getAuthentication()).thenReturn(authentication);
@@ -48,10 +59,11 @@ class UserControllerTest {
     }
 
     @Test
-    void findById_ShouldReturnUser_WhenUserExists() {
+    void findById_ShouldReturnUser_WhenUserExists() throws Exception {
         // Arrange
         User user = new User();
         user.setId(1L);
+        when(userService.getVersion(1L)).thenReturn(new ResourceVersion(1L, LocalDateTime.of(2024, 1, 10, 9, 0)));
         when(userService.findById(1L)).thenReturn(user);
         UserDto mockedUserDto = new UserDto();
         mockedUserDto.setId(1L);
@@ -61,11 +73,11 @@ class UserControllerTest {
         when(userMapper.toDto(user)).thenReturn(mockedUserDto);
 
         // Act
-        ResponseEntity<?> response = userController.findById("1");
+        ResponseEntity<?> response = userController.findById("1", new ServletWebRequest(new MockHttpServletRequest()));
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        UserDto responseBody = (UserDto) response.getBody();
+        UserDto responseBody = objectMapper.readValue((byte[]) response.getBody(), UserDto.class);
         assertNotNull(responseBody);
         assertEquals(1L, responseBody.getId());
         assertEquals("test@example.com", responseBody.getEmail());
@@ -73,22 +85,43 @@ class UserControllerTest {
         assertEquals("Doe", responseBody.getLastName());
     }
 
+    @Test
+    void findById_ShouldNotLoadTheUserAgain_WhenUnchanged() {
+        // Arrange
+        User user = new User();
+        user.setId(1L);
+        when(userService.getVersion(1L)).thenReturn(new ResourceVersion(1L, LocalDateTime.of(2024, 1, 10, 9, 0)));
+        when(userService.findById(1L)).thenReturn(user);
+        when(userMapper.toDto(user)).thenReturn(new UserDto());
+
+        // Act
+        userController.findById("1", new ServletWebRequest(new MockHttpServletRequest()));
+        ResponseEntity<?> response = userController.findById("1", new ServletWebRequest(new MockHttpServletRequest()));
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(userService, times(2)).getVersion(1L);
+        verify(userService, times(1)).findById(1L);
+    }
+
     @Test
     void findById_ShouldReturnNotFound_WhenUserDoesNotExist() {
         // Arrange
-        when(userService.findById(1L)).thenReturn(null);
+        when(userService.getVersion(1L)).thenReturn(null);
 
         // Act
-        ResponseEntity<?> response = userController.findById("1");
+        ResponseEntity<?> response = userController.findById("1", new ServletWebRequest(new MockHttpServletRequest()));
 
         // Assert
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        verify(userService, never()).findById(anyLong());
     }
 
     @Test
     void findById_ShouldReturnBadRequest_WhenIdIsInvalid() {
         // Act
-        ResponseEntity<?> response = userController.findById("invalid");
+        ResponseEntity<?> response = userController.findById("invalid",
+                new ServletWebRequest(new MockHttpServletRequest()));
 
         // Assert
         assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
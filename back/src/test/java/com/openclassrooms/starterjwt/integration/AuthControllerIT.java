@@ -5,6 +5,8 @@ import com.openclassrooms.starterjwt.models.User;
 import com.openclassrooms.starterjwt.payload.request.LoginRequest;
 import com.openclassrooms.starterjwt.payload.request.SignupRequest;
 import com.openclassrooms.starterjwt.repository.UserRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -13,9 +15,12 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 
+import javax.persistence.EntityManagerFactory;
+
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -33,6 +38,10 @@ public class AuthControllerIT {
     private UserRepository userRepository;
     @Autowired
     private ObjectMapper mapper;
+    @Autowired
+    private PasswordEncoder appPasswordEncoder;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
 
     final private BCryptPasswordEncoder passwordEncoder=new BCryptPasswordEncoder();
 
@@ -72,6 +81,68 @@ public class AuthControllerIT {
         assertThat(userRepository.findByEmail("987654321@test.com").isPresent()).isTrue();
     }
 
+    @Test
+    @DisplayName("When I request login, the user is loaded with a single SQL statement")
+    public void testLoginIssuesSingleQuery() throws Exception {
+        // Given - An admin whose password was hashed before hashes were prefixed, with the configured cost
+        String storedHash = new BCryptPasswordEncoder(10).encode("Aa123456!");
+        userRepository.save(User.builder()
+                .email("single-query@test.com")
+                .password(storedHash)
+                .lastName("MockLN")
+                .firstName("MockFN")
+                .admin(true)
+                .build());
+
+        LoginRequest loginRequest = new LoginRequest();
+        loginRequest.setEmail("single-query@test.com");
+        loginRequest.setPassword("Aa123456!");
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        // When - The user logs in
+        this.mockMvc.perform(post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(loginRequest)))
+
+                // Then - The admin flag comes from the authentication load and only one statement ran:
+                // the hash is not rewritten just to gain the encoder prefix
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"admin\":true")));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(userRepository.findByEmail("single-query@test.com").get().getPassword()).isEqualTo(storedHash);
+    }
+
+    @Test
+    @DisplayName("When I log in with a password hashed with another cost, it is hashed again with the configured one")
+    public void testLoginUpgradesHashWithAnotherCost() throws Exception {
+        // Given - A user whose password was hashed with a lower cost than the configured one
+        String storedHash = new BCryptPasswordEncoder(4).encode("Aa123456!");
+        userRepository.save(User.builder()
+                .email("upgrade@test.com")
+                .password(storedHash)
+                .lastName("MockLN")
+                .firstName("MockFN")
+                .build());
+
+        LoginRequest loginRequest = new LoginRequest();
+        loginRequest.setEmail("upgrade@test.com");
+        loginRequest.setPassword("Aa123456!");
+
+        // When - The user logs in
+        this.mockMvc.perform(post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(loginRequest)))
+                .andExpect(status().isOk());
+
+        // Then - The stored hash was replaced by a prefixed one that the application no longer upgrades
+        String upgraded = userRepository.findByEmail("upgrade@test.com").get().getPassword();
+        assertThat(upgraded.startsWith("{bcrypt}$2a$10$")).isTrue();
+        assertThat(appPasswordEncoder.matches("Aa123456!", upgraded)).isTrue();
+        assertThat(appPasswordEncoder.upgradeEncoding(upgraded)).isFalse();
+    }
+
     @Test
     @DisplayName("When I request register with correct data, response is OK")
     public void testRegisterUserWorks() throws Exception {
@@ -0,0 +1,190 @@
+package com.openclassrooms.starterjwt.integration;
+
+import com.openclassrooms.starterjwt.models.Session;
+import com.openclassrooms.starterjwt.models.Teacher;
+import com.openclassrooms.starterjwt.models.User;
+import com.openclassrooms.starterjwt.repository.SessionRepository;
+import com.openclassrooms.starterjwt.repository.TeacherRepository;
+import com.openclassrooms.starterjwt.repository.UserRepository;
+import com.openclassrooms.starterjwt.services.SessionService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class ConditionalGetIT {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private SessionService sessionService;
+
+    @Autowired
+    private SessionRepository sessionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TeacherRepository teacherRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    private Teacher teacher;
+
+    private Session session;
+
+    private User user;
+
+    @BeforeEach
+    void setup() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        teacher = teacherRepository.save(Teacher.builder().firstName("Margot").lastName("Delahaye").build());
+        user = userRepository.save(User.builder()
+                .email("poller@studio.com")
+                .firstName("First")
+                .lastName("Last")
+                .password("password")
+                .admin(false)
+                .build());
+        session = sessionService.create(Session.builder()
+                .name("Morning flow")
+                .description("Gentle start")
+                .date(new Date())
+                .teacher(teacher)
+                .users(new ArrayList<>())
+                .build());
+    }
+
+    @AfterEach
+    void clean() {
+        sessionRepository.deleteAll();
+        userRepository.deleteAll();
+        teacherRepository.deleteAll();
+    }
+
+    private String eTag(String url) throws Exception {
+        return this.mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
+    @Test
+    @WithMockUser(roles = "USER")
+    @DisplayName("A session the client already holds is answered with 304 from one query, until it is booked")
+    public void testSessionNotModifiedUntilBooked() throws Exception {
+        // Given - The client read the session and kept its tag
+        String url = "/api/session/" + session.getId();
+        String eTag = eTag(url);
+        statistics.clear();
+
+        // When - The client polls with the tag
+        this.mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, eTag))
+
+                // Then - The response is 304 without a body, and nothing but the version was read
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+
+        // Then - Once a seat is booked, the same poll gets the new session and a new tag
+        sessionService.participate(session.getId(), user.getId());
+        String newTag = this.mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(newTag).isNotEqualTo(eTag);
+    }
+
+    @Test
+    @WithMockUser(roles = "USER")
+    @DisplayName("A session read again without a tag is written from its encoded body, until it is booked")
+    public void testSessionBodyIsReusedUntilBooked() throws Exception {
+        // Given - The session was read once
+        String url = "/api/session/" + session.getId();
+        String body = this.mockMvc.perform(get(url)).andReturn().getResponse().getContentAsString();
+        statistics.clear();
+
+        // When - Another client reads it without a tag
+        this.mockMvc.perform(get(url))
+
+                // Then - The same body is written, and nothing but the version was read
+                .andExpect(status().isOk())
+                .andExpect(content().string(body));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+        // Then - Once a seat is booked, the new participant is written
+        sessionService.participate(session.getId(), user.getId());
+        this.mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"users\":[" + user.getId() + "]")));
+    }
+
+    @Test
+    @WithMockUser(roles = "USER")
+    @DisplayName("The session list is answered with 304 until a session is added or removed")
+    public void testSessionListNotModifiedUntilChanged() throws Exception {
+        // Given - The client read the list and kept its tag
+        String eTag = eTag("/api/session");
+        statistics.clear();
+
+        // When - The client polls the list, a page of it, then polls again after a deletion
+        this.mockMvc.perform(get("/api/session").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+        this.mockMvc.perform(get("/api/session?size=10").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+        long queries = statistics.getPrepareStatementCount();
+        sessionService.delete(session.getId());
+
+        // Then - Each 304 took one query, and the deletion is seen
+        assertThat(queries).isEqualTo(2);
+        this.mockMvc.perform(get("/api/session").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    @WithMockUser(roles = "USER")
+    @DisplayName("Teachers are answered with 304 from the cache")
+    public void testTeachersNotModifiedUntilChanged() throws Exception {
+        // Given - The client read a teacher and the teacher list
+        String detailTag = eTag("/api/teacher/" + teacher.getId());
+        String listTag = eTag("/api/teacher");
+        statistics.clear();
+
+        // When - The client polls both
+        this.mockMvc.perform(get("/api/teacher/" + teacher.getId()).header(HttpHeaders.IF_NONE_MATCH, detailTag))
+                .andExpect(status().isNotModified());
+        this.mockMvc.perform(get("/api/teacher").header(HttpHeaders.IF_NONE_MATCH, listTag))
+                .andExpect(status().isNotModified());
+
+        // Then - The polls were answered from the cache
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+    }
+}
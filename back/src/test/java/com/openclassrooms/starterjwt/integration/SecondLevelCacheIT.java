@@ -0,0 +1,176 @@
+package com.openclassrooms.starterjwt.integration;
+
+import com.openclassrooms.starterjwt.models.Session;
+import com.openclassrooms.starterjwt.models.Teacher;
+import com.openclassrooms.starterjwt.models.User;
+import com.openclassrooms.starterjwt.repository.SessionRepository;
+import com.openclassrooms.starterjwt.repository.TeacherRepository;
+import com.openclassrooms.starterjwt.repository.UserRepository;
+import com.openclassrooms.starterjwt.services.SessionService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Replays the entity loads of the write paths (a session with its teacher and participants, then one of the
+ * users) in separate transactions on H2, and counts the statements with the second-level cache cold and warm.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class SecondLevelCacheIT {
+
+    private static final int PARTICIPANTS = 20;
+
+    private static final int ITERATIONS = 50;
+
+    @Autowired
+    private SessionService sessionService;
+
+    @Autowired
+    private SessionRepository sessionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TeacherRepository teacherRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Statistics statistics;
+
+    private Long sessionId;
+
+    private List<Long> userIds;
+
+    @BeforeEach
+    void setup() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Teacher teacher = teacherRepository.save(Teacher.builder().firstName("Margot").lastName("Delahaye").build());
+
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i <= PARTICIPANTS; i++) {
+            users.add(User.builder()
+                    .email("cached" + i + "@studio.com")
+                    .firstName("First" + i)
+                    .lastName("Last" + i)
+                    .password("password")
+                    .admin(false)
+                    .build());
+        }
+        userIds = userRepository.saveAll(users).stream().map(User::getId).collect(Collectors.toList());
+
+        sessionId = sessionService.create(Session.builder()
+                .name("Morning flow")
+                .description("Gentle start")
+                .date(new Date())
+                .teacher(teacher)
+                .users(new ArrayList<>(users.subList(0, PARTICIPANTS)))
+                .build()).getId();
+        entityManagerFactory.getCache().evictAll();
+    }
+
+    @AfterEach
+    void clean() {
+        sessionRepository.deleteAll();
+        userRepository.deleteAll();
+        teacherRepository.deleteAll();
+    }
+
+    /**
+     * Loads the session, its teacher and participants, and one user, in its own transaction.
+     * Returns the number of participants seen.
+     */
+    private int load() {
+        return transactionTemplate.execute(status -> {
+            Session session = sessionRepository.findById(sessionId).orElseThrow(IllegalStateException::new);
+            session.getTeacher().getLastName();
+            session.getUsers().forEach(User::getEmail);
+            userRepository.findById(userIds.get(PARTICIPANTS)).orElseThrow(IllegalStateException::new);
+            return session.getUsers().size();
+        });
+    }
+
+    @Test
+    @DisplayName("Repeated entity loads are served from the second-level cache")
+    public void testEntityLoadsAreServedFromCache() {
+        // Given - A cold cache
+        statistics.clear();
+
+        // When - The same unit of work runs once cold, then repeatedly warm
+        load();
+        long coldStatements = statistics.getPrepareStatementCount();
+        statistics.clear();
+        for (int i = 0; i < ITERATIONS; i++) {
+            load();
+        }
+
+        // Then - The cold run reads the database, the warm runs issue no statement at all
+        assertThat(coldStatements).isGreaterThanOrEqualTo(3);
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(statistics.getDomainDataRegionStatistics("sessions").getHitCount()).isEqualTo(ITERATIONS);
+        assertThat(statistics.getDomainDataRegionStatistics("sessionParticipants").getHitCount()).isEqualTo(ITERATIONS);
+        assertThat(statistics.getDomainDataRegionStatistics("users").getHitCount())
+                .isEqualTo((long) ITERATIONS * (PARTICIPANTS + 1));
+        assertThat(statistics.getDomainDataRegionStatistics("teachers").getHitCount()).isEqualTo(ITERATIONS);
+    }
+
+    @Test
+    @DisplayName("A booking only invalidates the session and its participants, and the next load sees the newcomer")
+    public void testBookingInvalidatesOnlyTheSessions() {
+        // Given - A warm cache and a user who is not participating yet
+        load();
+        Long newcomer = userIds.get(PARTICIPANTS);
+
+        // When - The user books a seat through the native statements, then the unit of work runs again
+        sessionService.participate(sessionId, newcomer);
+        statistics.clear();
+        int participants = load();
+
+        // Then - The new participant is seen, and the teacher and the users still come from the cache
+        assertThat(participants).isEqualTo(PARTICIPANTS + 1);
+        assertThat(statistics.getDomainDataRegionStatistics("sessions").getMissCount()).isEqualTo(1);
+        assertThat(statistics.getDomainDataRegionStatistics("teachers").getMissCount()).isZero();
+        assertThat(statistics.getDomainDataRegionStatistics("users").getMissCount()).isZero();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Hits and misses are published per region")
+    public void testRegionStatisticsArePublished() {
+        // When - The unit of work runs cold then warm
+        load();
+        load();
+
+        // Then - The registry holds hit and miss counters for each region
+        for (String region : new String[]{"sessions", "sessionParticipants", "users", "teachers"}) {
+            assertThat(meterRegistry.find("hibernate.second.level.cache.requests")
+                    .tag("region", region).tag("result", "hit").functionCounter()).isNotNull();
+            assertThat(meterRegistry.find("hibernate.second.level.cache.requests")
+                    .tag("region", region).tag("result", "miss").functionCounter()).isNotNull();
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.openclassrooms.starterjwt.integration;
+
+import com.openclassrooms.starterjwt.dto.SessionDto;
+import com.openclassrooms.starterjwt.exception.BadRequestException;
+import com.openclassrooms.starterjwt.exception.ConflictException;
+import com.openclassrooms.starterjwt.exception.NotFoundException;
+import com.openclassrooms.starterjwt.mapper.SessionMapper;
+import com.openclassrooms.starterjwt.models.Session;
+import com.openclassrooms.starterjwt.models.Teacher;
+import com.openclassrooms.starterjwt.models.User;
+import com.openclassrooms.starterjwt.models.WaitlistEntry;
+import com.openclassrooms.starterjwt.repository.SessionRepository;
+import com.openclassrooms.starterjwt.repository.TeacherRepository;
+import com.openclassrooms.starterjwt.repository.UserRepository;
+import com.openclassrooms.starterjwt.repository.WaitlistRepository;
+import com.openclassrooms.starterjwt.services.SessionService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Fires thousands of parallel bookings at capacity-limited sessions and checks the seats are never oversold,
+ * then checks that a cancellation hands the freed seat to the waitlist and that bookings invalidate stale edits.
+ * Every transaction checks, just before it commits, that the participant count of each session matches its
+ * PARTICIPATE rows: a single run proves the rule held after each change, not only at the end.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class SessionBookingIT {
+
+    private static final int USERS = 2000;
+
+    private static final int THREADS = 64;
+
+    @Autowired
+    private SessionService sessionService;
+
+    @Autowired
+    private SessionRepository sessionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TeacherRepository teacherRepository;
+
+    @Autowired
+    private WaitlistRepository waitlistRepository;
+
+    @Autowired
+    private SessionMapper sessionMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Teacher teacher;
+
+    private List<Long> userIds;
+
+    @TestConfiguration
+    static class ParticipantCountCheck {
+        static final Queue<String> DRIFTS = new ConcurrentLinkedQueue<>();
+
+        @Bean
+        JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+            return new JpaTransactionManager(entityManagerFactory) {
+                @Override
+                protected void prepareForCommit(DefaultTransactionStatus status) {
+                    // Also called when a joined call completes: only the outermost commit is checked. The
+                    // transaction still holds the locks of its writes, so it sees its own result.
+                    if (!status.isNewTransaction()) {
+                        return;
+                    }
+                    EntityManager entityManager = EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory);
+                    List<?> drifts = entityManager.createNativeQuery("select s.id, s.participant_count,"
+                            + " (select count(*) from PARTICIPATE p where p.session_id = s.id) from SESSIONS s"
+                            + " where s.participant_count <> (select count(*) from PARTICIPATE p where p.session_id = s.id)")
+                            .getResultList();
+                    for (Object drift : drifts) {
+                        DRIFTS.add(Arrays.toString((Object[]) drift));
+                    }
+                }
+            };
+        }
+    }
+
+    @BeforeEach
+    void setup() {
+        ParticipantCountCheck.DRIFTS.clear();
+        teacher = teacherRepository.save(Teacher.builder().firstName("Margot").lastName("Delahaye").build());
+
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            users.add(User.builder()
+                    .email("booker" + i + "@studio.com")
+                    .firstName("First" + i)
+                    .lastName("Last" + i)
+                    .password("password")
+                    .admin(false)
+                    .build());
+        }
+        userIds = new ArrayList<>();
+        userRepository.saveAll(users).forEach(user -> userIds.add(user.getId()));
+    }
+
+    @AfterEach
+    void clean() {
+        waitlistRepository.deleteAll();
+        sessionRepository.deleteAll();
+        userRepository.deleteAll();
+        teacherRepository.deleteAll();
+        assertThat(ParticipantCountCheck.DRIFTS).as("sessions whose counter drifted from their rows").isEmpty();
+    }
+
+    private Session session(int capacity) {
+        return sessionRepository.save(Session.builder()
+                .name("Popular class")
+                .description("Opens in a few seconds")
+                .date(new Date())
+                .teacher(teacher)
+                .users(new ArrayList<>())
+                .capacity(capacity)
+                .build());
+    }
+
+    private int participants(Long sessionId) {
+        return jdbcTemplate.queryForObject("select count(*) from PARTICIPATE where session_id = ?", Integer.class, sessionId);
+    }
+
+    private int participantCount(Long sessionId) {
+        return jdbcTemplate.queryForObject("select participant_count from SESSIONS where id = ?", Integer.class, sessionId);
+    }
+
+    @Test
+    @DisplayName("Parallel bookings never exceed the capacity of the session")
+    public void testParallelBookingsNeverOverbook() throws Exception {
+        // Given - A session with 50 seats and 2000 users opening it at the same time
+        Long sessionId = session(50).getId();
+        AtomicInteger booked = new AtomicInteger();
+        AtomicInteger full = new AtomicInteger();
+
+        // When - Every user books concurrently
+        List<Throwable> unexpected = book(sessionId, userIds, booked, full, new AtomicInteger());
+
+        // Then - Exactly the capacity is booked, every other booking is refused as full, and the counter matches the rows
+        assertThat(unexpected).isEmpty();
+        assertThat(booked.get()).isEqualTo(50);
+        assertThat(full.get()).isEqualTo(USERS - 50);
+        assertThat(participants(sessionId)).isEqualTo(50);
+        assertThat(participantCount(sessionId)).isEqualTo(50);
+    }
+
+    @Test
+    @DisplayName("Parallel bookings and cancellations keep the counter in step with the participants")
+    public void testParallelBookingsAndCancellations() throws Exception {
+        // Given - A session with 20 seats, and users who book twice in a row and leave half of the time
+        Long sessionId = session(20).getId();
+        List<Long> requests = new ArrayList<>();
+        for (Long userId : userIds.subList(0, 500)) {
+            requests.add(userId);
+            requests.add(userId);
+        }
+        AtomicInteger booked = new AtomicInteger();
+        AtomicInteger full = new AtomicInteger();
+        AtomicInteger duplicates = new AtomicInteger();
+
+        // When - Users book concurrently, some of them leaving right after their booking
+        List<Throwable> unexpected = book(sessionId, requests, booked, full, duplicates, userId -> userId % 2 == 0);
+
+        // Then - The session never holds more than its capacity and the counter matches the rows
+        assertThat(unexpected).isEmpty();
+        assertThat(booked.get() + full.get() + duplicates.get()).isEqualTo(requests.size());
+        assertThat(participants(sessionId)).isLessThanOrEqualTo(20);
+        assertThat(participantCount(sessionId)).isEqualTo(participants(sessionId));
+    }
+
+    @Test
+    @DisplayName("A cancellation in a full session promotes the first waiting user")
+    public void testCancellationPromotesFirstWaitingUser() {
+        // Given - A full session with two users waiting
+        Long sessionId = session(2).getId();
+        sessionService.participate(sessionId, userIds.get(0));
+        sessionService.participate(sessionId, userIds.get(1));
+        sessionService.joinWaitlist(sessionId, userIds.get(2));
+        sessionService.joinWaitlist(sessionId, userIds.get(3));
+
+        // When - A participant leaves
+        sessionService.noLongerParticipate(sessionId, userIds.get(0));
+
+        // Then - The first waiting user takes the seat and the second one stays queued
+        assertThat(sessionService.getById(sessionId).getUsers()).containsExactlyInAnyOrder(userIds.get(1), userIds.get(2));
+        assertThat(participantCount(sessionId)).isEqualTo(2);
+        assertThat(waitlistRepository.findBySessionIdOrderById(sessionId))
+                .extracting(WaitlistEntry::getUserId).containsExactly(userIds.get(3));
+    }
+
+    @Test
+    @DisplayName("A user queued through another instance is promoted")
+    public void testCancellationPromotesUserQueuedElsewhere() {
+        // Given - A full session, and a waitlist row written directly, as another instance would
+        Long sessionId = session(1).getId();
+        sessionService.participate(sessionId, userIds.get(0));
+        jdbcTemplate.update("insert into WAITLIST (session_id, user_id) values (?, ?)", sessionId, userIds.get(1));
+
+        // When - The participant leaves
+        sessionService.noLongerParticipate(sessionId, userIds.get(0));
+
+        // Then - The queued user takes the seat
+        assertThat(sessionService.getById(sessionId).getUsers()).containsExactly(userIds.get(1));
+        assertThat(waitlistRepository.findBySessionIdOrderById(sessionId)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("An edit based on a version read before a booking is refused")
+    public void testStaleEditIsRefusedAfterBooking() {
+        // Given - An admin reads the session, then a user books a seat
+        Long sessionId = session(10).getId();
+        SessionDto stale = sessionService.getById(sessionId);
+        sessionService.participate(sessionId, userIds.get(0));
+
+        // When - The admin saves the edit made on the stale read
+        stale.setName("Renamed class");
+
+        // Then - The edit is refused instead of dropping the booking, and goes through once based on a fresh read
+        assertThatThrownBy(() -> sessionService.update(sessionId, sessionMapper.toEntity(stale)))
+                .isInstanceOf(ObjectOptimisticLockingFailureException.class);
+        SessionDto fresh = sessionService.getById(sessionId);
+        fresh.setName("Renamed class");
+        sessionService.update(sessionId, sessionMapper.toEntity(fresh));
+        assertThat(sessionService.getById(sessionId).getUsers()).containsExactly(userIds.get(0));
+        assertThat(sessionService.getById(sessionId).getVersion()).isGreaterThan(fresh.getVersion());
+    }
+
+    @Test
+    @DisplayName("An edit sent with a version for an unknown session does not create one")
+    public void testEditOfUnknownSessionIsRefused() {
+        // Given - A session was read, then deleted
+        Long sessionId = session(10).getId();
+        SessionDto deleted = sessionService.getById(sessionId);
+        sessionService.delete(sessionId);
+
+        // When - The edit made on that read is saved
+        // Then - It is refused and no session is inserted in its place
+        assertThatThrownBy(() -> sessionService.update(sessionId, sessionMapper.toEntity(deleted)))
+                .isInstanceOf(NotFoundException.class);
+        assertThat(sessionRepository.count()).isZero();
+    }
+
+    private List<Throwable> book(Long sessionId, List<Long> requests,
+                                 AtomicInteger booked, AtomicInteger full, AtomicInteger duplicates) throws Exception {
+        return book(sessionId, requests, booked, full, duplicates, userId -> false);
+    }
+
+    private List<Throwable> book(Long sessionId, List<Long> requests,
+                                 AtomicInteger booked, AtomicInteger full, AtomicInteger duplicates,
+                                 Predicate<Long> leavesAfterBooking) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (Long userId : requests) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                try {
+                    sessionService.participate(sessionId, userId);
+                    booked.incrementAndGet();
+                    if (leavesAfterBooking.test(userId)) {
+                        sessionService.noLongerParticipate(sessionId, userId);
+                    }
+                } catch (ConflictException e) {
+                    full.incrementAndGet();
+                } catch (BadRequestException e) {
+                    duplicates.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        List<Throwable> unexpected = new ArrayList<>();
+        for (Future<?> future : futures) {
+            try {
+                future.get(60, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                unexpected.add(e.getCause());
+            }
+        }
+        pool.shutdown();
+        return unexpected;
+    }
+}
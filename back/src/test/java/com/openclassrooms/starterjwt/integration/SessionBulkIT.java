@@ -0,0 +1,168 @@
+package com.openclassrooms.starterjwt.integration;
+
+import com.openclassrooms.starterjwt.dto.SessionImportReportDto;
+import com.openclassrooms.starterjwt.models.Session;
+import com.openclassrooms.starterjwt.models.Teacher;
+import com.openclassrooms.starterjwt.models.User;
+import com.openclassrooms.starterjwt.repository.SessionRepository;
+import com.openclassrooms.starterjwt.repository.TeacherRepository;
+import com.openclassrooms.starterjwt.repository.UserRepository;
+import com.openclassrooms.starterjwt.services.SessionBulkService;
+import com.openclassrooms.starterjwt.services.SessionService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class SessionBulkIT {
+
+    private static final int GENERATED_SESSIONS = 20000;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private SessionService sessionService;
+
+    @Autowired
+    private SessionBulkService sessionBulkService;
+
+    @Autowired
+    private SessionRepository sessionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TeacherRepository teacherRepository;
+
+    private Teacher teacher;
+
+    @BeforeEach
+    void setup() {
+        teacher = teacherRepository.save(Teacher.builder().firstName("Margot").lastName("Delahaye").build());
+    }
+
+    @AfterEach
+    void clean() {
+        sessionRepository.deleteAll();
+        userRepository.deleteAll();
+        teacherRepository.deleteAll();
+    }
+
+    @Test
+    @WithMockUser(roles = "USER")
+    @DisplayName("Exported sessions come with their participants and can be imported back")
+    public void testExportThenImport() throws Exception {
+        // Given - Two sessions, one of them booked by a user
+        User user = userRepository.save(User.builder()
+                .email("bulk@studio.com")
+                .firstName("First")
+                .lastName("Last")
+                .password("password")
+                .admin(false)
+                .build());
+        List<User> participants = new ArrayList<>();
+        participants.add(user);
+        sessionService.create(Session.builder().name("Morning flow").description("Gentle start")
+                .date(new Date()).teacher(teacher).users(participants).build());
+        sessionService.create(Session.builder().name("Evening flow").description("Slow end")
+                .date(new Date()).teacher(teacher).users(new ArrayList<>()).capacity(12).build());
+
+        // When - The sessions are exported
+        MvcResult export = this.mockMvc.perform(get("/api/session/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Then - Both come out with their participants, and importing them refuses only the booked one
+        this.mockMvc.perform(asyncDispatch(export))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].name").value("Morning flow"))
+                .andExpect(jsonPath("$[0].users[0]").value(user.getId()))
+                .andExpect(jsonPath("$[1].capacity").value(12))
+                .andExpect(jsonPath("$[1].users.length()").value(0));
+
+        this.mockMvc.perform(post("/api/session/import")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(export.getResponse().getContentAsByteArray()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(1))
+                .andExpect(jsonPath("$.failed").value(1))
+                .andExpect(jsonPath("$.errors[0].index").value(0));
+        assertThat(sessionRepository.count()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("A large import is written in batches and only skips the invalid items")
+    public void testLargeImport() throws IOException {
+        // Given - Thousands of generated sessions, produced as they are read, one of them invalid
+        InputStream items = generated(GENERATED_SESSIONS, GENERATED_SESSIONS / 2);
+
+        // When - They are imported
+        SessionImportReportDto report = sessionBulkService.importSessions(items);
+
+        // Then - Every valid session is stored and the invalid one is reported at its position
+        assertThat(report.getImported()).isEqualTo(GENERATED_SESSIONS - 1);
+        assertThat(report.getFailed()).isEqualTo(1);
+        assertThat(report.getErrors().get(0).getIndex()).isEqualTo(GENERATED_SESSIONS / 2);
+        assertThat(sessionRepository.count()).isEqualTo(GENERATED_SESSIONS - 1);
+    }
+
+    private InputStream generated(int count, int invalidIndex) {
+        Enumeration<InputStream> parts = new Enumeration<InputStream>() {
+            private int index = -1;
+
+            @Override
+            public boolean hasMoreElements() {
+                return index <= count;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                String part;
+                if (index == -1) {
+                    part = "[";
+                } else if (index == count) {
+                    part = "]";
+                } else {
+                    String name = index == invalidIndex ? "" : "Generated class " + index;
+                    part = (index > 0 ? "," : "") + "{\"name\":\"" + name + "\",\"date\":" + (index * 60000L)
+                            + ",\"teacher_id\":" + teacher.getId() + ",\"description\":\"Imported\"}";
+                }
+                index++;
+                return new ByteArrayInputStream(part.getBytes(StandardCharsets.UTF_8));
+            }
+        };
+        return new SequenceInputStream(parts);
+    }
+}
@@ -0,0 +1,151 @@
+package com.openclassrooms.starterjwt.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.starterjwt.models.Session;
+import com.openclassrooms.starterjwt.models.Teacher;
+import com.openclassrooms.starterjwt.models.User;
+import com.openclassrooms.starterjwt.repository.SessionRepository;
+import com.openclassrooms.starterjwt.repository.TeacherRepository;
+import com.openclassrooms.starterjwt.repository.UserRepository;
+import com.openclassrooms.starterjwt.services.SessionListSnapshot;
+import com.openclassrooms.starterjwt.services.SessionService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// The staleness checks would issue statements of their own: they are kept out of the statement counts.
+@SpringBootTest(properties = {"oc.app.sessionListSnapshotEnabled=true", "oc.app.sessionListDebounceMs=20",
+        "oc.app.sessionListMaxStaleMs=600000"})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class SessionListSnapshotIT {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private SessionService sessionService;
+
+    @Autowired
+    private SessionListSnapshot sessionListSnapshot;
+
+    @Autowired
+    private SessionRepository sessionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TeacherRepository teacherRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    private Session session;
+
+    private User user;
+
+    @BeforeEach
+    void setup() throws Exception {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Teacher teacher = teacherRepository.save(Teacher.builder().firstName("Margot").lastName("Delahaye").build());
+        user = userRepository.save(User.builder()
+                .email("snapshot@studio.com")
+                .firstName("First")
+                .lastName("Last")
+                .password("password")
+                .admin(false)
+                .build());
+        session = sessionService.create(Session.builder()
+                .name("Morning flow")
+                .description("Gentle start")
+                .date(new Date())
+                .teacher(teacher)
+                .users(new ArrayList<>())
+                .build());
+        awaitSnapshot(() -> listed().contains("\"id\":" + session.getId() + ","));
+    }
+
+    @AfterEach
+    void clean() {
+        sessionRepository.deleteAll();
+        userRepository.deleteAll();
+        teacherRepository.deleteAll();
+    }
+
+    private String listed() {
+        SessionListSnapshot.Snapshot snapshot = sessionListSnapshot.current();
+        return snapshot != null ? new String(snapshot.getBody()) : "";
+    }
+
+    private void awaitSnapshot(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+
+    @Test
+    @WithMockUser(roles = "USER")
+    @DisplayName("The session list is written from memory without reading the database")
+    public void testListIsServedFromTheSnapshot() throws Exception {
+        // Given - The snapshot holds the current list
+        String expected = objectMapper.writeValueAsString(sessionService.findAll());
+        statistics.clear();
+
+        // When - The list is read, then polled with its tag
+        String eTag = this.mockMvc.perform(get("/api/session"))
+                .andExpect(status().isOk())
+                .andExpect(result -> assertThat(result.getResponse().getContentAsString()).isEqualTo(expected))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        this.mockMvc.perform(get("/api/session").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+
+        // Then - No statement was issued, and the tag is the one of the collection
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(eTag).isEqualTo(sessionService.getCollectionVersion().getETag());
+    }
+
+    @Test
+    @WithMockUser(roles = "USER")
+    @DisplayName("A booking is seen in the list once the snapshot is rebuilt")
+    public void testBookingRebuildsTheSnapshot() throws Exception {
+        // Given - The client holds the tag of the list
+        String eTag = this.mockMvc.perform(get("/api/session"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // When - A user books a seat
+        sessionService.participate(session.getId(), user.getId());
+        awaitSnapshot(() -> listed().contains("\"users\":[" + user.getId() + "]"));
+
+        // Then - The poll gets the new list
+        this.mockMvc.perform(get("/api/session").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(result -> assertThat(result.getResponse().getHeader(HttpHeaders.ETAG)).isNotEqualTo(eTag));
+    }
+}
@@ -0,0 +1,157 @@
+package com.openclassrooms.starterjwt.integration;
+
+import com.openclassrooms.starterjwt.models.Session;
+import com.openclassrooms.starterjwt.models.Teacher;
+import com.openclassrooms.starterjwt.models.User;
+import com.openclassrooms.starterjwt.repository.SessionRepository;
+import com.openclassrooms.starterjwt.repository.TeacherRepository;
+import com.openclassrooms.starterjwt.repository.UserRepository;
+import com.openclassrooms.starterjwt.services.SessionService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class SessionPatchIT {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private SessionService sessionService;
+
+    @Autowired
+    private SessionRepository sessionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TeacherRepository teacherRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    private Session session;
+
+    private List<Long> userIds;
+
+    @BeforeEach
+    void setup() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Teacher teacher = teacherRepository.save(Teacher.builder().firstName("Margot").lastName("Delahaye").build());
+
+        userIds = new ArrayList<>();
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            User user = userRepository.save(User.builder()
+                    .email("patch" + i + "@studio.com")
+                    .firstName("First" + i)
+                    .lastName("Last" + i)
+                    .password("password")
+                    .admin(false)
+                    .build());
+            userIds.add(user.getId());
+            users.add(user);
+        }
+
+        session = sessionService.create(Session.builder()
+                .name("Morning flow")
+                .description("Gentle start")
+                .date(new Date())
+                .teacher(teacher)
+                .users(users.subList(0, 2))
+                .build());
+    }
+
+    @AfterEach
+    void clean() {
+        sessionRepository.deleteAll();
+        userRepository.deleteAll();
+        teacherRepository.deleteAll();
+    }
+
+    @Test
+    @WithMockUser(roles = "USER")
+    @DisplayName("Patching a field leaves the participants untouched")
+    public void testPatchNameLeavesParticipantsUntouched() throws Exception {
+        // Given - A session with two participants
+        statistics.clear();
+
+        // When - Only its name is patched
+        this.mockMvc.perform(patch("/api/session/" + session.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Evening flow\"}"))
+
+                // Then - The name changes, the other fields and the participants are kept, and the join table is not rewritten
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Evening flow"))
+                .andExpect(jsonPath("$.description").value("Gentle start"))
+                .andExpect(jsonPath("$.users.length()").value(2));
+        assertThat(statistics.getCollectionRecreateCount()).isZero();
+        assertThat(statistics.getCollectionRemoveCount()).isZero();
+        assertThat(statistics.getEntityUpdateCount()).isEqualTo(1);
+    }
+
+    @Test
+    @WithMockUser(roles = "USER")
+    @DisplayName("Patching the participants only writes the difference")
+    public void testPatchUsersWritesOnlyTheDifference() throws Exception {
+        // Given - A session with the first two users
+        Long version = sessionService.getById(session.getId()).getVersion();
+
+        // When - The second participant is replaced by the third one
+        this.mockMvc.perform(patch("/api/session/" + session.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"users\":[" + userIds.get(0) + "," + userIds.get(2) + "],\"version\":" + version + "}"))
+
+                // Then - The participants are updated and the version moves on
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.users.length()").value(2))
+                .andExpect(jsonPath("$.version").value(version + 1));
+        assertThat(sessionService.getById(session.getId()).getUsers())
+                .containsExactlyInAnyOrderElementsOf(Arrays.asList(userIds.get(0), userIds.get(2)));
+    }
+
+    @Test
+    @WithMockUser(roles = "USER")
+    @DisplayName("Patching with a stale version is refused")
+    public void testPatchWithStaleVersionIsRefused() throws Exception {
+        // Given - The session was booked after the client read it
+        Long version = sessionService.getById(session.getId()).getVersion();
+        sessionService.participate(session.getId(), userIds.get(2));
+
+        // When - The client patches the version it read
+        this.mockMvc.perform(patch("/api/session/" + session.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Evening flow\",\"version\":" + version + "}"))
+
+                // Then - The response should be Conflict
+                .andExpect(status().isConflict());
+    }
+}
@@ -1,6 +1,7 @@
 package com.openclassrooms.starterjwt.mapper;
 
 import com.openclassrooms.starterjwt.dto.SessionDto;
+import com.openclassrooms.starterjwt.exception.BadRequestException;
 import com.openclassrooms.starterjwt.models.Session;
 import com.openclassrooms.starterjwt.models.Teacher;
 import com.openclassrooms.starterjwt.models.User;
@@ -11,6 +12,7 @@ import org.junit.jupiter.api.Test;
 import org.mapstruct.factory.Mappers;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -18,7 +20,6 @@ import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
-import java.util.Objects;
 
 class SessionMapperTest {
 
@@ -49,8 +50,9 @@ class SessionMapperTest {
         teacher.setId(1L);
 
         when(teacherService.findById(1L)).thenReturn(teacher);
-        when(userService.findById(2L)).thenReturn(new User(2L,"charlie.green@example.com",  "Green","Charlie","vert123",true, LocalDateTime.parse("2024-08-20T21:33:08"),LocalDateTime.parse("2024-08-20T21:33:08")));
-        when(userService.findById(3L)).thenReturn(new User(3L,"dana.blue@example.com", "Blue", "Dana" ,"bleu123",true, LocalDateTime.parse("2024-08-20T21:33:08"),LocalDateTime.parse("2024-08-20T21:33:08")));
+        when(userService.findAllById(Arrays.asList(2L, 3L))).thenReturn(Arrays.asList(
+                new User(2L,"charlie.green@example.com",  "Green","Charlie","vert123",true, LocalDateTime.parse("2024-08-20T21:33:08"),LocalDateTime.parse("2024-08-20T21:33:08")),
+                new User(3L,"dana.blue@example.com", "Blue", "Dana" ,"bleu123",true, LocalDateTime.parse("2024-08-20T21:33:08"),LocalDateTime.parse("2024-08-20T21:33:08"))));
 
         Session session = sessionMapper.toEntity(sessionDto);
 
@@ -60,6 +62,8 @@ class SessionMapperTest {
         assertEquals(2, session.getUsers().size());
         assertTrue(session.getUsers().stream().anyMatch(user -> user.getId().equals(2L)));
         assertTrue(session.getUsers().stream().anyMatch(user -> user.getId().equals(3L)));
+        verify(userService, times(1)).findAllById(Arrays.asList(2L, 3L));
+        verify(userService, never()).findById(any());
     }
 
     @Test
@@ -68,6 +72,7 @@ class SessionMapperTest {
         sessionDto.setDescription("Test description");
         sessionDto.setTeacher_id(null);
         sessionDto.setUsers(Collections.emptyList());
+        when(userService.findAllById(Collections.emptyList())).thenReturn(new ArrayList<>());
 
         Session session = sessionMapper.toEntity(sessionDto);
 
@@ -78,18 +83,13 @@ class SessionMapperTest {
     }
 
     @Test
-    void toEntity_shouldIgnoreInvalidUserIds() {
+    void toEntity_shouldRejectUnknownUserIds() {
         SessionDto sessionDto = new SessionDto();
         sessionDto.setUsers(Arrays.asList(99L, 100L));
 
-        when(userService.findById(99L)).thenReturn(null);
-        when(userService.findById(100L)).thenReturn(null);
+        when(userService.findAllById(Arrays.asList(99L, 100L))).thenThrow(new BadRequestException());
 
-        Session session = sessionMapper.toEntity(sessionDto);
-
-        assertNotNull(session);
-        session.getUsers().removeIf(Objects::isNull);
-        assertTrue(session.getUsers().isEmpty());
+        assertThrows(BadRequestException.class, () -> sessionMapper.toEntity(sessionDto));
     }
 
     @Test
@@ -146,10 +146,12 @@ class SessionMapperTest {
         when(teacherService.findById(1L)).thenReturn(new Teacher(1L,"Brown", "Alice", LocalDateTime.parse("2024-08-20T21:33:08"),LocalDateTime.parse("2024-08-20T21:33:08")));
         when(teacherService.findById(2L)).thenReturn(new Teacher(2L,"White", "Bob", LocalDateTime.parse("2024-08-20T21:33:08"),LocalDateTime.parse("2024-08-20T21:33:08")));
 
-        when(userService.findById(2L)).thenReturn(new User(2L, "alice.green@example.com", "Green", "Alice", "password", true, LocalDateTime.now(), LocalDateTime.now()));
-        when(userService.findById(3L)).thenReturn(new User(3L, "bob.white@example.com", "White", "Bob", "password", true, LocalDateTime.now(), LocalDateTime.now()));
-        when(userService.findById(4L)).thenReturn(new User(4L, "charlie.blue@example.com", "Blue", "Charlie", "password", true, LocalDateTime.now(), LocalDateTime.now()));
-        when(userService.findById(5L)).thenReturn(new User(5L, "dana.black@example.com", "Black", "Dana", "password", true, LocalDateTime.now(), LocalDateTime.now()));
+        when(userService.findAllById(Arrays.asList(2L, 3L))).thenReturn(Arrays.asList(
+                new User(2L, "alice.green@example.com", "Green", "Alice", "password", true, LocalDateTime.now(), LocalDateTime.now()),
+                new User(3L, "bob.white@example.com", "White", "Bob", "password", true, LocalDateTime.now(), LocalDateTime.now())));
+        when(userService.findAllById(Arrays.asList(4L, 5L))).thenReturn(Arrays.asList(
+                new User(4L, "charlie.blue@example.com", "Blue", "Charlie", "password", true, LocalDateTime.now(), LocalDateTime.now()),
+                new User(5L, "dana.black@example.com", "Black", "Dana", "password", true, LocalDateTime.now(), LocalDateTime.now())));
 
         List<Session> sessionList = sessionMapper.toEntity(Arrays.asList(dto1, dto2));
 
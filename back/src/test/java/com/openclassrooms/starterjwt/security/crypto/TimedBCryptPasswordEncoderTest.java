@@ -0,0 +1,63 @@
+package com.openclassrooms.starterjwt.security.crypto;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimedBCryptPasswordEncoderTest {
+
+    private MeterRegistry meterRegistry;
+
+    private TimedBCryptPasswordEncoder passwordEncoder;
+
+    @BeforeEach
+    void setUp() {
+        // Given - An encoder using a low cost to keep the tests fast
+        meterRegistry = new SimpleMeterRegistry();
+        passwordEncoder = new TimedBCryptPasswordEncoder(5, meterRegistry);
+    }
+
+    @Test
+    void encodeAndMatches_ShouldRecordHashingTime() {
+        // When - A password is hashed and checked
+        String hash = passwordEncoder.encode("password");
+        boolean matches = passwordEncoder.matches("password", hash);
+
+        // Then - Both operations are timed
+        assertThat(matches).isTrue();
+        Timer encode = meterRegistry.get("auth.password.hashing").tag("operation", "encode").timer();
+        Timer check = meterRegistry.get("auth.password.hashing").tag("operation", "matches").timer();
+        assertThat(encode.count()).isEqualTo(1);
+        assertThat(check.count()).isEqualTo(1);
+    }
+
+    @Test
+    void upgradeEncoding_ShouldBeRequired_OnlyWhenStoredCostDiffers() {
+        // Given - Hashes produced with a lower, the same and a higher cost
+        String lower = new BCryptPasswordEncoder(4).encode("password");
+        String same = new BCryptPasswordEncoder(5).encode("password");
+        String higher = new BCryptPasswordEncoder(6).encode("password");
+
+        // When / Then - Any cost other than the configured one asks for a re-hash
+        assertThat(passwordEncoder.upgradeEncoding(lower)).isTrue();
+        assertThat(passwordEncoder.upgradeEncoding(same)).isFalse();
+        assertThat(passwordEncoder.upgradeEncoding(higher)).isTrue();
+        assertThat(passwordEncoder.upgradeEncoding(null)).isFalse();
+    }
+
+    @Test
+    void calibrate_ShouldStayWithinBcryptBounds() {
+        // When - The encoder is calibrated with a tiny and a generous budget
+        int tiny = TimedBCryptPasswordEncoder.calibrate(0);
+        int generous = TimedBCryptPasswordEncoder.calibrate(20);
+
+        // Then - The cost never drops below the minimum and grows with the budget
+        assertThat(tiny).isEqualTo(TimedBCryptPasswordEncoder.MIN_STRENGTH);
+        assertThat(generous).isBetween(TimedBCryptPasswordEncoder.MIN_STRENGTH, TimedBCryptPasswordEncoder.MAX_STRENGTH);
+    }
+}
@@ -1,5 +1,6 @@
 package com.openclassrooms.starterjwt.security.jwt;
 
+import com.openclassrooms.starterjwt.security.services.UserDetailsImpl;
 import com.openclassrooms.starterjwt.security.services.UserDetailsServiceImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -14,12 +15,14 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.Date;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -28,11 +31,17 @@ import static org.mockito.Mockito.*;
 class AuthTokenFilterTest {
 
     @Mock
-    private JwtUtils jwtUtils;
+    private JwtTokenCache jwtTokenCache;
 
     @Mock
     private UserDetailsServiceImpl userDetailsService;
 
+    @Mock
+    private UserRevocationList userRevocationList;
+
+    @Mock
+    private TokenRevocationIndex tokenRevocationIndex;
+
     @Mock
     private UserDetails userDetails;
 
@@ -61,8 +70,8 @@ class AuthTokenFilterTest {
         String username = "testuser";
         request.addHeader("Authorization", "Bearer " + token);
 
-        when(jwtUtils.validateJwtToken(token)).thenReturn(true);
-        when(jwtUtils.getUserNameFromJwtToken(token)).thenReturn(username);
+        JwtClaims claims = JwtClaims.builder().subject(username).build();
+        when(jwtTokenCache.validate(token)).thenReturn(JwtValidationResult.valid(claims));
         when(userDetailsService.loadUserByUsername(username)).thenReturn(userDetails);
         when(userDetails.getAuthorities()).thenReturn(null); // No roles needed for this test
 
@@ -74,8 +83,7 @@ class AuthTokenFilterTest {
                 (UsernamePasswordAuthenticationToken) SecurityContextHolder.getContext().getAuthentication();
         assertThat(authentication).isNotNull();
         assertThat(authentication.getPrincipal()).isEqualTo(userDetails);
-        verify(jwtUtils, times(1)).validateJwtToken(token);
-        verify(jwtUtils, times(1)).getUserNameFromJwtToken(token);
+        verify(jwtTokenCache, times(1)).validate(token);
         verify(userDetailsService, times(1)).loadUserByUsername(username);
     }
 
@@ -85,18 +93,107 @@ class AuthTokenFilterTest {
         String token = "invalid-jwt-token";
         request.addHeader("Authorization", "Bearer " + token);
 
-        when(jwtUtils.validateJwtToken(token)).thenReturn(false);
+        when(jwtTokenCache.validate(token)).thenReturn(JwtValidationResult.invalid(JwtValidationResult.Status.MALFORMED));
 
         // When - The filter's doFilterInternal method is called
         authTokenFilter.doFilterInternal(request, response, filterChain);
 
         // Then - No authentication should be stored in the SecurityContext
         assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
-        verify(jwtUtils, times(1)).validateJwtToken(token);
-        verify(jwtUtils, never()).getUserNameFromJwtToken(anyString());
+        verify(jwtTokenCache, times(1)).validate(token);
         verify(userDetailsService, never()).loadUserByUsername(anyString());
     }
 
+    @Test
+    void doFilterInternal_ShouldBuildPrincipalFromClaims_WhenStatelessModeIsEnabled() throws ServletException, IOException {
+        // Given - Stateless mode and a valid token carrying the user claims
+        ReflectionTestUtils.setField(authTokenFilter, "statelessPrincipal", true);
+        String token = "valid-jwt-token";
+        request.addHeader("Authorization", "Bearer " + token);
+
+        JwtClaims claims = JwtClaims.builder()
+                .subject("testuser")
+                .id(7L)
+                .firstName("John")
+                .lastName("Doe")
+                .admin(true)
+                .build();
+        when(jwtTokenCache.validate(token)).thenReturn(JwtValidationResult.valid(claims));
+        when(userRevocationList.isRevoked(7L)).thenReturn(false);
+
+        // When - The filter's doFilterInternal method is called
+        authTokenFilter.doFilterInternal(request, response, filterChain);
+
+        // Then - The principal is rebuilt from the token without loading the user
+        UserDetailsImpl principal = (UserDetailsImpl) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        assertThat(principal.getId()).isEqualTo(7L);
+        assertThat(principal.getUsername()).isEqualTo("testuser");
+        assertThat(principal.getFirstName()).isEqualTo("John");
+        assertThat(principal.getLastName()).isEqualTo("Doe");
+        assertThat(principal.getAdmin()).isTrue();
+        verifyNoInteractions(userDetailsService);
+    }
+
+    @Test
+    void doFilterInternal_ShouldNotAuthenticateUser_WhenStatelessUserIsRevoked() throws ServletException, IOException {
+        // Given - Stateless mode and a token of a revoked user
+        ReflectionTestUtils.setField(authTokenFilter, "statelessPrincipal", true);
+        String token = "revoked-jwt-token";
+        request.addHeader("Authorization", "Bearer " + token);
+
+        JwtClaims claims = JwtClaims.builder().subject("testuser").id(7L).build();
+        when(jwtTokenCache.validate(token)).thenReturn(JwtValidationResult.valid(claims));
+        when(userRevocationList.isRevoked(7L)).thenReturn(true);
+
+        // When - The filter's doFilterInternal method is called
+        authTokenFilter.doFilterInternal(request, response, filterChain);
+
+        // Then - No authentication should be stored in the SecurityContext
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+        verifyNoInteractions(userDetailsService);
+    }
+
+    @Test
+    void doFilterInternal_ShouldNotAuthenticateUser_WhenRefreshTokenIsUsedAsAccessToken() throws ServletException, IOException {
+        // Given - A valid refresh token sent as a bearer token
+        String token = "refresh-jwt-token";
+        request.addHeader("Authorization", "Bearer " + token);
+
+        JwtClaims claims = JwtClaims.builder().subject("testuser").tokenType(JwtClaims.REFRESH_TOKEN).build();
+        when(jwtTokenCache.validate(token)).thenReturn(JwtValidationResult.valid(claims));
+
+        // When - The filter's doFilterInternal method is called
+        authTokenFilter.doFilterInternal(request, response, filterChain);
+
+        // Then - The refresh token does not authenticate the request
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+        verifyNoInteractions(userDetailsService);
+    }
+
+    @Test
+    void doFilterInternal_ShouldNotAuthenticateUser_WhenTokenIdIsRevoked() throws ServletException, IOException {
+        // Given - A valid access token that was revoked at logout
+        String token = "logged-out-jwt-token";
+        request.addHeader("Authorization", "Bearer " + token);
+
+        Date expiration = new Date(System.currentTimeMillis() + 60_000);
+        JwtClaims claims = JwtClaims.builder()
+                .subject("testuser")
+                .tokenId("jti-1")
+                .tokenType(JwtClaims.ACCESS_TOKEN)
+                .expiration(expiration)
+                .build();
+        when(jwtTokenCache.validate(token)).thenReturn(JwtValidationResult.valid(claims));
+        when(tokenRevocationIndex.isRevoked("jti-1", expiration)).thenReturn(true);
+
+        // When - The filter's doFilterInternal method is called
+        authTokenFilter.doFilterInternal(request, response, filterChain);
+
+        // Then - The revoked token is refused without loading the user
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+        verifyNoInteractions(userDetailsService);
+    }
+
     @Test
     void doFilterInternal_ShouldNotAuthenticateUser_WhenNoJwtIsProvided() throws ServletException, IOException {
         // When - The filter's doFilterInternal method is called without a token
@@ -107,7 +204,7 @@ class AuthTokenFilterTest {
 
         // Then - No authentication should be stored in the SecurityContext
         assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
-        verifyNoInteractions(jwtUtils);
+        verifyNoInteractions(jwtTokenCache);
         verifyNoInteractions(userDetailsService);
     }
 
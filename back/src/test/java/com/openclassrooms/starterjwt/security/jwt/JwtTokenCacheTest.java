@@ -0,0 +1,93 @@
+package com.openclassrooms.starterjwt.security.jwt;
+
+import com.openclassrooms.starterjwt.security.jwt.JwtValidationResult.Status;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JwtTokenCacheTest {
+
+    @Mock
+    private JwtUtils jwtUtils;
+
+    private MeterRegistry meterRegistry;
+
+    private JwtTokenCache jwtTokenCache;
+
+    @BeforeEach
+    void setUp() {
+        // Given - A token cache backed by the mocked JWT utility
+        meterRegistry = new SimpleMeterRegistry();
+        jwtTokenCache = new JwtTokenCache(jwtUtils, meterRegistry, 100);
+    }
+
+    private JwtValidationResult validExpiringIn(long millis) {
+        return JwtValidationResult.valid(JwtClaims.builder()
+                .subject("testUser")
+                .expiration(new Date(System.currentTimeMillis() + millis))
+                .build());
+    }
+
+    @Test
+    void validate_ShouldParseTokenOnlyOnce_WhenTokenIsReused() {
+        // Given - A valid token
+        JwtValidationResult valid = validExpiringIn(60_000);
+        when(jwtUtils.validate("token")).thenReturn(valid);
+
+        // When - The same token is resolved several times
+        JwtValidationResult first = jwtTokenCache.validate("token");
+        JwtValidationResult second = jwtTokenCache.validate("token");
+
+        // Then - The token is parsed once and the cached result is returned
+        assertThat(first).isSameAs(valid);
+        assertThat(second).isSameAs(valid);
+        verify(jwtUtils, times(1)).validate("token");
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "jwtTokens").tag("result", "hit")
+                .functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "jwtTokens").tag("result", "miss")
+                .functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void validate_ShouldNotCacheInvalidTokens() {
+        // Given - A token that fails verification
+        when(jwtUtils.validate("invalid")).thenReturn(JwtValidationResult.invalid(Status.INVALID_SIGNATURE));
+
+        // When - The token is resolved twice
+        JwtValidationResult first = jwtTokenCache.validate("invalid");
+        JwtValidationResult second = jwtTokenCache.validate("invalid");
+
+        // Then - Both lookups report the failure and the token is verified each time
+        assertThat(first.getStatus()).isEqualTo(Status.INVALID_SIGNATURE);
+        assertThat(second.getStatus()).isEqualTo(Status.INVALID_SIGNATURE);
+        verify(jwtUtils, times(2)).validate("invalid");
+        assertThat(jwtTokenCache.estimatedSize()).isZero();
+    }
+
+    @Test
+    void validate_ShouldParseAgain_WhenCachedTokenHasExpired() throws InterruptedException {
+        // Given - A token expiring almost immediately
+        when(jwtUtils.validate("shortLived"))
+                .thenReturn(validExpiringIn(50), JwtValidationResult.invalid(Status.EXPIRED));
+
+        // When - The token is resolved before and after its expiration
+        JwtValidationResult beforeExpiration = jwtTokenCache.validate("shortLived");
+        Thread.sleep(100);
+        JwtValidationResult afterExpiration = jwtTokenCache.validate("shortLived");
+
+        // Then - The expired entry is not served from the cache
+        assertThat(beforeExpiration.isValid()).isTrue();
+        assertThat(afterExpiration.getStatus()).isEqualTo(Status.EXPIRED);
+        verify(jwtUtils, times(2)).validate("shortLived");
+    }
+}
@@ -5,15 +5,26 @@ import io.jsonwebtoken.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.security.core.Authentication;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Base64;
 import java.util.Date;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -37,6 +48,9 @@ class JwtUtilsTest {
         // Given - JWT utility setup with a mock secret key and expiration time
         setPrivateField(jwtUtils, "jwtSecret", jwtSecret);
         setPrivateField(jwtUtils, "jwtExpirationMs", jwtExpirationMs);
+        setPrivateField(jwtUtils, "jwtKeyId", "current");
+        setPrivateField(jwtUtils, "jwtPreviousKeys", "retired:retiredSecretKey");
+        jwtUtils.init();
 
         // Generate a test JWT
         testToken = Jwts.builder()
@@ -128,4 +142,205 @@ class JwtUtilsTest {
         // Then - The result should be false
         assertThat(isValid).isFalse();
     }
+
+    @Test
+    void validate_ShouldReturnClaims_WhenTokenIsValid() {
+        // Given - A token carrying the user claims
+        String token = Jwts.builder()
+                .setSubject("testUser")
+                .claim(JwtClaims.ID, 42)
+                .claim(JwtClaims.FIRST_NAME, "John")
+                .claim(JwtClaims.LAST_NAME, "Doe")
+                .claim(JwtClaims.ADMIN, true)
+                .setExpiration(new Date(System.currentTimeMillis() + jwtExpirationMs))
+                .signWith(SignatureAlgorithm.HS512, jwtSecret)
+                .compact();
+
+        // When - The token is validated once
+        JwtValidationResult result = jwtUtils.validate(token);
+
+        // Then - The result is valid and exposes every claim
+        assertThat(result.isValid()).isTrue();
+        JwtClaims claims = result.getClaims();
+        assertThat(claims.getSubject()).isEqualTo("testUser");
+        assertThat(claims.getExpiration()).isNotNull();
+        assertThat(claims.getId()).isEqualTo(42L);
+        assertThat(claims.getFirstName()).isEqualTo("John");
+        assertThat(claims.getLastName()).isEqualTo("Doe");
+        assertThat(claims.getAdmin()).isTrue();
+    }
+
+    @Test
+    void validate_ShouldReturnTypedFailure_WhenTokenIsInvalid() {
+        // Given - An expired token and a token signed with another key
+        String expiredToken = Jwts.builder()
+                .setSubject("testUser")
+                .setExpiration(new Date(System.currentTimeMillis() - 5000))
+                .signWith(SignatureAlgorithm.HS512, jwtSecret)
+                .compact();
+        String foreignToken = Jwts.builder()
+                .setSubject("testUser")
+                .setExpiration(new Date(System.currentTimeMillis() + jwtExpirationMs))
+                .signWith(SignatureAlgorithm.HS512, "wrongSecretKey")
+                .compact();
+
+        // When / Then - Each failure is reported with its own status and no claims
+        assertThat(jwtUtils.validate(expiredToken).getStatus()).isEqualTo(JwtValidationResult.Status.EXPIRED);
+        assertThat(jwtUtils.validate(foreignToken).getStatus()).isEqualTo(JwtValidationResult.Status.INVALID_SIGNATURE);
+        assertThat(jwtUtils.validate("invalid.token.format").getStatus()).isEqualTo(JwtValidationResult.Status.MALFORMED);
+        assertThat(jwtUtils.validate("").getStatus()).isEqualTo(JwtValidationResult.Status.EMPTY);
+        assertThat(jwtUtils.validate(testToken).getClaims()).isNotNull();
+        assertThat(jwtUtils.validate(expiredToken).getClaims()).isNull();
+    }
+
+    @Test
+    void generateTokens_ShouldTypeAccessAndRefreshTokensWithDistinctIds() throws Exception {
+        // Given - A user and a refresh lifetime longer than the access lifetime
+        setPrivateField(jwtUtils, "jwtRefreshExpirationMs", 24L * 60 * 60 * 1000);
+        UserDetailsImpl user = new UserDetailsImpl(3L, "testUser", "John", "Doe", false, "password");
+
+        // When - An access token and a refresh token are issued
+        JwtClaims access = jwtUtils.validate(jwtUtils.generateJwtToken(user)).getClaims();
+        JwtClaims refresh = jwtUtils.validate(jwtUtils.generateRefreshToken(user)).getClaims();
+
+        // Then - Both carry their type and a unique id, and the refresh token outlives the access token
+        assertThat(access.isRefreshToken()).isFalse();
+        assertThat(access.getTokenType()).isEqualTo(JwtClaims.ACCESS_TOKEN);
+        assertThat(refresh.isRefreshToken()).isTrue();
+        assertThat(refresh.getId()).isEqualTo(3L);
+        assertThat(refresh.getFirstName()).isNull();
+        assertThat(access.getTokenId()).isNotBlank().isNotEqualTo(refresh.getTokenId());
+        assertThat(refresh.getExpiration()).isAfter(access.getExpiration());
+    }
+
+    @Test
+    void generateJwtToken_ShouldSignWithCurrentKeyId() {
+        // Given - Mocked authentication and user details
+        when(authentication.getPrincipal()).thenReturn(userDetails);
+        when(userDetails.getUsername()).thenReturn("testUser");
+
+        // When - A token is generated
+        String token = jwtUtils.generateJwtToken(authentication);
+
+        // Then - The token names its key and is accepted by the verification key ring
+        assertThat(Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(token).getHeader().getKeyId())
+                .isEqualTo("current");
+        assertThat(jwtUtils.validate(token).getClaims().getSubject()).isEqualTo("testUser");
+    }
+
+    @Test
+    void validate_ShouldAcceptTokensSignedWithRetiredKey() {
+        // Given - A token signed before the key rotation
+        String token = Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, "retired")
+                .setSubject("testUser")
+                .setExpiration(new Date(System.currentTimeMillis() + jwtExpirationMs))
+                .signWith(SignatureAlgorithm.HS512, "retiredSecretKey")
+                .compact();
+
+        // When / Then - The retired key still verifies it
+        assertThat(jwtUtils.validate(token).isValid()).isTrue();
+    }
+
+    @Test
+    void validate_ShouldRejectTokensWithUnknownKeyId() {
+        // Given - A token naming a key the ring does not hold
+        String token = Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, "unknown")
+                .setSubject("testUser")
+                .setExpiration(new Date(System.currentTimeMillis() + jwtExpirationMs))
+                .signWith(SignatureAlgorithm.HS512, jwtSecret)
+                .compact();
+
+        // When / Then - The signature cannot be trusted
+        assertThat(jwtUtils.validate(token).getStatus()).isEqualTo(JwtValidationResult.Status.INVALID_SIGNATURE);
+    }
+
+    @Test
+    void validate_ShouldRejectTokenSignedWithRetiredKeyUnderCurrentKeyId() {
+        // Given - A token signed with a retired secret but claiming the current key
+        String token = Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, "current")
+                .setSubject("testUser")
+                .setExpiration(new Date(System.currentTimeMillis() + jwtExpirationMs))
+                .signWith(SignatureAlgorithm.HS512, "retiredSecretKey")
+                .compact();
+
+        // When / Then - The key selected by the kid does not match
+        assertThat(jwtUtils.validate(token).getStatus()).isEqualTo(JwtValidationResult.Status.INVALID_SIGNATURE);
+    }
+
+    private JwtUtils asymmetricJwtUtils(Path privateKey, Path publicKeys) throws Exception {
+        JwtUtils asymmetric = new JwtUtils();
+        setPrivateField(asymmetric, "jwtSigningMode", "asymmetric");
+        setPrivateField(asymmetric, "jwtAlgorithm", "RS256");
+        setPrivateField(asymmetric, "jwtKeyId", "auth-1");
+        setPrivateField(asymmetric, "jwtExpirationMs", jwtExpirationMs);
+        setPrivateField(asymmetric, "jwtPrivateKey", privateKey != null ? new FileSystemResource(privateKey) : null);
+        setPrivateField(asymmetric, "jwtPublicKeys", new FileSystemResource(publicKeys));
+        asymmetric.init();
+        return asymmetric;
+    }
+
+    private Path writePem(Path directory, String fileName, String type, byte[] der) throws IOException {
+        String body = Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(der);
+        String pem = "-----BEGIN " + type + "-----\n" + body + "\n-----END " + type + "-----\n";
+        return Files.write(directory.resolve(fileName), pem.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void asymmetricMode_ShouldVerifyOnNodesHoldingOnlyThePublicKey(@TempDir Path directory) throws Exception {
+        // Given - An auth node holding the RSA private key and a node holding only the public key
+        KeyPair keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Path privateKey = writePem(directory, "private.pem", "PRIVATE KEY", keyPair.getPrivate().getEncoded());
+        Path publicKey = writePem(directory, "public.pem", "PUBLIC KEY", keyPair.getPublic().getEncoded());
+        JwtUtils authNode = asymmetricJwtUtils(privateKey, publicKey);
+        JwtUtils verifyingNode = asymmetricJwtUtils(null, publicKey);
+
+        when(authentication.getPrincipal()).thenReturn(userDetails);
+        when(userDetails.getUsername()).thenReturn("testUser");
+
+        // When - The auth node signs a token
+        String token = authNode.generateJwtToken(authentication);
+
+        // Then - The verifying node accepts it but cannot sign, and HMAC tokens are refused
+        assertThat(verifyingNode.validate(token).getClaims().getSubject()).isEqualTo("testUser");
+        assertThatThrownBy(() -> verifyingNode.generateJwtToken(authentication)).isInstanceOf(IllegalStateException.class);
+        assertThat(verifyingNode.validate(testToken).getStatus()).isEqualTo(JwtValidationResult.Status.INVALID_SIGNATURE);
+    }
+
+    @Test
+    void asymmetricMode_ShouldSelectPublicKeyFromJwksByKeyId(@TempDir Path directory) throws Exception {
+        // Given - A JWKS publishing the current and a retired RSA key
+        KeyPair current = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        KeyPair retired = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Path jwks = Files.write(directory.resolve("jwks.json"), ("{\"keys\":["
+                + jwk("auth-1", (RSAPublicKey) current.getPublic()) + ","
+                + jwk("auth-0", (RSAPublicKey) retired.getPublic()) + "]}").getBytes(StandardCharsets.UTF_8));
+        JwtUtils verifyingNode = asymmetricJwtUtils(null, jwks);
+
+        String retiredToken = Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, "auth-0")
+                .setSubject("testUser")
+                .setExpiration(new Date(System.currentTimeMillis() + jwtExpirationMs))
+                .signWith(SignatureAlgorithm.RS256, retired.getPrivate())
+                .compact();
+        String forgedToken = Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, "auth-1")
+                .setSubject("testUser")
+                .setExpiration(new Date(System.currentTimeMillis() + jwtExpirationMs))
+                .signWith(SignatureAlgorithm.RS256, retired.getPrivate())
+                .compact();
+
+        // When / Then - Each token is checked against the key named by its kid
+        assertThat(verifyingNode.validate(retiredToken).isValid()).isTrue();
+        assertThat(verifyingNode.validate(forgedToken).getStatus()).isEqualTo(JwtValidationResult.Status.INVALID_SIGNATURE);
+    }
+
+    private String jwk(String keyId, RSAPublicKey publicKey) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return "{\"kty\":\"RSA\",\"kid\":\"" + keyId + "\","
+                + "\"n\":\"" + encoder.encodeToString(publicKey.getModulus().toByteArray()) + "\","
+                + "\"e\":\"" + encoder.encodeToString(publicKey.getPublicExponent().toByteArray()) + "\"}";
+    }
 }
@@ -0,0 +1,68 @@
+package com.openclassrooms.starterjwt.security.jwt;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenRevocationIndexTest {
+
+    @Test
+    void revoke_ShouldMarkOnlyTheGivenTokenId() {
+        // Given - An index and two live tokens expiring at the same time
+        TokenRevocationIndex index = new TokenRevocationIndex(60_000);
+        Date expiration = new Date(System.currentTimeMillis() + 60_000);
+
+        // When - One of them is revoked
+        boolean revoked = index.revoke("jti-1", expiration);
+
+        // Then - Only that token is reported as revoked
+        assertThat(revoked).isTrue();
+        assertThat(index.isRevoked("jti-1", expiration)).isTrue();
+        assertThat(index.isRevoked("jti-2", expiration)).isFalse();
+        assertThat(index.isRevoked(null, expiration)).isFalse();
+    }
+
+    @Test
+    void revoke_ShouldReturnFalse_WhenTokenIsAlreadyRevoked() {
+        // Given - A token revoked once
+        TokenRevocationIndex index = new TokenRevocationIndex(60_000);
+        Date expiration = new Date(System.currentTimeMillis() + 60_000);
+        index.revoke("jti-1", expiration);
+
+        // When - It is revoked a second time
+        boolean revokedAgain = index.revoke("jti-1", expiration);
+
+        // Then - The second revocation is refused, so the token can only be redeemed once
+        assertThat(revokedAgain).isFalse();
+    }
+
+    @Test
+    void revoke_ShouldIgnoreTokensThatAlreadyExpired() {
+        // Given - An index
+        TokenRevocationIndex index = new TokenRevocationIndex(60_000);
+
+        // When - An expired token is revoked
+        boolean revoked = index.revoke("jti-1", new Date(System.currentTimeMillis() - 1));
+
+        // Then - Nothing is stored
+        assertThat(revoked).isFalse();
+        assertThat(index.size()).isZero();
+    }
+
+    @Test
+    void size_ShouldDropBucketsOnceTheirTokensHaveExpired() throws InterruptedException {
+        // Given - Small buckets and a token expiring shortly
+        TokenRevocationIndex index = new TokenRevocationIndex(10);
+        index.revoke("shortLived", new Date(System.currentTimeMillis() + 20));
+        index.revoke("longLived", new Date(System.currentTimeMillis() + 60_000));
+        assertThat(index.size()).isEqualTo(2);
+
+        // When - The short-lived token has expired
+        Thread.sleep(60);
+
+        // Then - Its bucket is evicted while the live token stays revoked
+        assertThat(index.size()).isEqualTo(1);
+    }
+}
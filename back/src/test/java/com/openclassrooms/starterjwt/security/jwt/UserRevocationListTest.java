@@ -0,0 +1,67 @@
+package com.openclassrooms.starterjwt.security.jwt;
+
+import com.openclassrooms.starterjwt.models.UserRevocation;
+import com.openclassrooms.starterjwt.repository.UserRevocationRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserRevocationListTest {
+
+    @Mock
+    private UserRevocationRepository userRevocationRepository;
+
+    private UserRevocationList revocationList(long retentionMs) {
+        return new UserRevocationList(userRevocationRepository, new SimpleMeterRegistry(), retentionMs, 60_000, 100);
+    }
+
+    @Test
+    void isRevoked_ShouldReturnTrue_OnlyForRevokedUsers() {
+        // Given - A revocation list where one user has been revoked
+        UserRevocationList userRevocationList = revocationList(60_000);
+        userRevocationList.revoke(1L);
+
+        // When / Then - Only the revoked user is reported, and the revocation was stored for the other instances
+        assertThat(userRevocationList.isRevoked(1L)).isTrue();
+        assertThat(userRevocationList.isRevoked(2L)).isFalse();
+        verify(userRevocationRepository, times(1)).save(any(UserRevocation.class));
+        verify(userRevocationRepository, times(1)).deleteRevokedBefore(any(LocalDateTime.class));
+    }
+
+    @Test
+    void isRevoked_ShouldReadRevocationsMadeElsewhere_OncePerCacheDelay() {
+        // Given - A user revoked through another instance
+        when(userRevocationRepository.findRevokedAtByUserId(3L)).thenReturn(Optional.of(LocalDateTime.now()));
+        UserRevocationList userRevocationList = revocationList(60_000);
+
+        // When - The user is checked on every request
+        boolean first = userRevocationList.isRevoked(3L);
+        boolean second = userRevocationList.isRevoked(3L);
+
+        // Then - The revocation is honoured, and the table was read once
+        assertThat(first).isTrue();
+        assertThat(second).isTrue();
+        verify(userRevocationRepository, times(1)).findRevokedAtByUserId(3L);
+    }
+
+    @Test
+    void isRevoked_ShouldReturnFalse_OnceTokensIssuedBeforeRevocationHaveExpired() {
+        // Given - A revocation stored longer ago than one token lifetime
+        when(userRevocationRepository.findRevokedAtByUserId(1L))
+                .thenReturn(Optional.of(LocalDateTime.now().minusMinutes(1)));
+        UserRevocationList userRevocationList = revocationList(20);
+
+        // When / Then - The entry is no longer needed
+        assertThat(userRevocationList.isRevoked(1L)).isFalse();
+    }
+}
@@ -0,0 +1,114 @@
+package com.openclassrooms.starterjwt.security.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AuthenticationExecutorTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private AuthenticationExecutor authenticationExecutor;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        authenticationExecutor.destroy();
+    }
+
+    @Test
+    void authenticate_ShouldRunOnLoginPoolAndRecordTimings() {
+        // Given - A login pool with a free worker
+        authenticationExecutor = new AuthenticationExecutor(meterRegistry, 1, 1, 5_000);
+        Authentication expected = new UsernamePasswordAuthenticationToken("user", "password");
+
+        // When - A login is authenticated
+        String[] threadName = new String[1];
+        Authentication result = authenticationExecutor.authenticate(() -> {
+            threadName[0] = Thread.currentThread().getName();
+            return expected;
+        });
+
+        // Then - The work ran on a login worker and both timers were recorded
+        assertThat(result).isSameAs(expected);
+        assertThat(threadName[0]).startsWith("login-");
+        assertThat(meterRegistry.get("auth.login.queue.wait").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("auth.login.authentication").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("executor.queued").tag("name", "login").gauge()).isNotNull();
+    }
+
+    @Test
+    void authenticate_ShouldRethrowAuthenticationFailures() {
+        // Given - A login pool
+        authenticationExecutor = new AuthenticationExecutor(meterRegistry, 1, 1, 5_000);
+
+        // When / Then - The original authentication error reaches the caller
+        assertThatThrownBy(() -> authenticationExecutor.authenticate(() -> {
+            throw new BadCredentialsException("Bad credentials");
+        })).isInstanceOf(BadCredentialsException.class).hasMessage("Bad credentials");
+    }
+
+    @Test
+    void authenticate_ShouldReject_WhenPoolAndQueueAreFull() throws InterruptedException {
+        // Given - A single worker busy with a login and a full queue
+        authenticationExecutor = new AuthenticationExecutor(meterRegistry, 1, 1, 5_000);
+        CountDownLatch started = new CountDownLatch(1);
+        startBlockedLogin(started);
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        startBlockedLogin(new CountDownLatch(1));
+        Thread.sleep(100);
+
+        // When / Then - A further login is rejected without waiting
+        assertThatThrownBy(() -> authenticationExecutor.authenticate(() -> null))
+                .isInstanceOf(RejectedExecutionException.class);
+    }
+
+    @Test
+    void authenticate_ShouldReject_WhenLoginTakesLongerThanTimeout() {
+        // Given - A login pool with a short timeout
+        authenticationExecutor = new AuthenticationExecutor(meterRegistry, 1, 1, 50);
+
+        // When / Then - A login that does not finish in time is rejected
+        assertThatThrownBy(() -> authenticationExecutor.authenticate(() -> {
+            awaitRelease();
+            return null;
+        })).isInstanceOf(RejectedExecutionException.class);
+    }
+
+    private void startBlockedLogin(CountDownLatch started) {
+        Thread caller = new Thread(() -> {
+            try {
+                authenticationExecutor.authenticate(() -> {
+                    started.countDown();
+                    awaitRelease();
+                    return null;
+                });
+            } catch (RejectedExecutionException ignored) {
+                // The test is torn down before the login completes
+            }
+        });
+        caller.setDaemon(true);
+        caller.start();
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -2,10 +2,11 @@ package com.openclassrooms.starterjwt.security.services;
 
 import com.openclassrooms.starterjwt.models.User;
 import com.openclassrooms.starterjwt.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -23,13 +24,17 @@ class UserDetailsServiceImplTest {
     @Mock
     private UserRepository userRepository;
 
-    @InjectMocks
+    private MeterRegistry meterRegistry;
+
     private UserDetailsServiceImpl userDetailsService;
 
     private User testUser;
 
     @BeforeEach
     void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        userDetailsService = new UserDetailsServiceImpl(userRepository, meterRegistry, 60_000, 100);
+
         // Given - A test user is prepared with sample data
         testUser = new User(
                 "test@example.com",
@@ -53,6 +58,7 @@ class UserDetailsServiceImplTest {
         assertThat(userDetails).isNotNull();
         assertThat(userDetails.getUsername()).isEqualTo(testUser.getEmail());
         assertThat(userDetails.getPassword()).isEqualTo(testUser.getPassword());
+        assertThat(((UserDetailsImpl) userDetails).getAdmin()).isFalse();
         verify(userRepository, times(1)).findByEmail(testUser.getEmail());
     }
 
@@ -71,4 +77,51 @@ class UserDetailsServiceImplTest {
         // Then - A UsernameNotFoundException should be thrown
         verify(userRepository, times(1)).findByEmail("unknown@example.com");
     }
+
+    @Test
+    void loadUserByUsername_ShouldQueryRepositoryOnce_WhenUserIsLoadedRepeatedly() {
+        // Given - The repository returns a user when queried with a valid email
+        when(userRepository.findByEmail(testUser.getEmail())).thenReturn(Optional.of(testUser));
+
+        // When - The same user is loaded several times
+        UserDetails first = userDetailsService.loadUserByUsername(testUser.getEmail());
+        UserDetails second = userDetailsService.loadUserByUsername(testUser.getEmail());
+
+        // Then - The repository is queried once and the cache metrics reflect the hit
+        assertThat(second).isSameAs(first);
+        verify(userRepository, times(1)).findByEmail(testUser.getEmail());
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "userDetails").tag("result", "hit")
+                .functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.size").tag("cache", "userDetails").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void evictUser_ShouldForceReload_WhenUserWasCached() {
+        // Given - A user already loaded into the cache
+        when(userRepository.findByEmail(testUser.getEmail())).thenReturn(Optional.of(testUser));
+        userDetailsService.loadUserByUsername(testUser.getEmail());
+
+        // When - The user is evicted and loaded again
+        userDetailsService.evictUser(testUser.getId());
+        userDetailsService.loadUserByUsername(testUser.getEmail());
+
+        // Then - The repository is queried again
+        verify(userRepository, times(2)).findByEmail(testUser.getEmail());
+    }
+
+    @Test
+    void updatePassword_ShouldStoreNewHashAndRefreshCache() {
+        // Given - A cached user whose password must be re-hashed
+        when(userRepository.findByEmail(testUser.getEmail())).thenReturn(Optional.of(testUser));
+        UserDetails current = userDetailsService.loadUserByUsername(testUser.getEmail());
+
+        // When - The password is upgraded
+        UserDetails updated = userDetailsService.updatePassword(current, "{bcrypt}newHash");
+
+        // Then - The new hash is saved and served to the next lookup without a query
+        verify(userRepository, times(1)).updatePassword(testUser.getEmail(), "{bcrypt}newHash");
+        assertThat(updated.getPassword()).isEqualTo("{bcrypt}newHash");
+        assertThat(userDetailsService.loadUserByUsername(testUser.getEmail()).getPassword()).isEqualTo("{bcrypt}newHash");
+        verify(userRepository, times(1)).findByEmail(testUser.getEmail());
+    }
 }
@@ -0,0 +1,59 @@
+package com.openclassrooms.starterjwt.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AfterCommitTest {
+
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void run_ShouldRunRightAway_WithoutTransaction() {
+        // When - An action is deferred outside of any transaction
+        AfterCommit.run(runs::incrementAndGet);
+
+        // Then - It has already run
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void run_ShouldWaitForTheCommit() {
+        // Given - A transaction is in progress
+        TransactionSynchronizationManager.initSynchronization();
+
+        // When - An action is deferred, then the transaction commits
+        AfterCommit.run(runs::incrementAndGet);
+        assertEquals(0, runs.get());
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+        // Then - The action ran once
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void run_ShouldSkipTheAction_OnRollback() {
+        // Given - A transaction is in progress
+        TransactionSynchronizationManager.initSynchronization();
+
+        // When - An action is deferred, then the transaction rolls back
+        AfterCommit.run(runs::incrementAndGet);
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        // Then - The action never ran
+        assertEquals(0, runs.get());
+    }
+}
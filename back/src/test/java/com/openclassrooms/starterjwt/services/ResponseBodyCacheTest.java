@@ -0,0 +1,163 @@
+package com.openclassrooms.starterjwt.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.starterjwt.dto.TeacherDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseBodyCacheTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private ResponseBodyCache responseBodyCache;
+
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        responseBodyCache = new ResponseBodyCache(objectMapper, new SimpleMeterRegistry(), 1_000_000, 128);
+        loads = new AtomicInteger();
+    }
+
+    private TeacherDto load(String lastName) {
+        loads.incrementAndGet();
+        return new TeacherDto(1L, lastName, "Margot", null, null);
+    }
+
+    private static ServletWebRequest request(String acceptEncoding) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/teacher/1");
+        if (acceptEncoding != null) {
+            request.addHeader(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        }
+        return new ServletWebRequest(request);
+    }
+
+    private static ServletWebRequest conditionalRequest(String acceptEncoding, String ifNoneMatch) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/teacher/1");
+        if (acceptEncoding != null) {
+            request.addHeader(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        }
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        return new ServletWebRequest(request, new MockHttpServletResponse());
+    }
+
+    @Test
+    void get_ShouldEncodeOnce_PerTag() throws Exception {
+        // When - The same version is read twice, then a new version once
+        ResponseBodyCache.Body first = responseBodyCache.get("teacher:1", "\"a\"", () -> load("Delahaye"));
+        ResponseBodyCache.Body second = responseBodyCache.get("teacher:1", "\"a\"", () -> load("Delahaye"));
+        ResponseBodyCache.Body changed = responseBodyCache.get("teacher:1", "\"b\"", () -> load("Thiercelin"));
+
+        // Then - The first version was encoded once, and the new one replaced it
+        assertSame(first, second);
+        assertEquals(2, loads.get());
+        assertEquals("Thiercelin", objectMapper.readValue(changed.getJson(), TeacherDto.class).getLastName());
+    }
+
+    @Test
+    void get_ShouldReturnNull_WhenNothingIsFound() {
+        // When - The loader finds nothing
+        // Then - Nothing is returned nor cached
+        assertNull(responseBodyCache.get("teacher:9", "\"a\"", () -> null));
+        assertNull(responseBodyCache.get("teacher:9", "\"a\"", () -> null));
+    }
+
+    @Test
+    void evict_ShouldDropOnlyTheGivenKey() {
+        // Given - A teacher and a user are cached
+        responseBodyCache.get("teacher:1", "\"a\"", () -> load("Delahaye"));
+        responseBodyCache.get("user:1", "\"a\"", () -> load("Doe"));
+
+        // When - The teacher is evicted
+        responseBodyCache.evict(ResponseBodyCache.key(ResponseBodyCache.TEACHER, 1L));
+        responseBodyCache.get("teacher:1", "\"a\"", () -> load("Delahaye"));
+        responseBodyCache.get("user:1", "\"a\"", () -> load("Doe"));
+
+        // Then - Only the teacher is encoded again
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void toResponse_ShouldWriteTheGzipVariant_WhenAccepted() throws Exception {
+        // Given - A body above the gzip threshold
+        ResponseBodyCache.Body body = responseBodyCache.get("teacher:1", "\"a\"",
+                () -> load(new String(new char[200]).replace('\0', 'x')));
+
+        // When - It is written to a client that accepts gzip, and to one that does not
+        ResponseEntity<byte[]> compressed = body.toResponse(request("br, gzip;q=0.8"));
+        ResponseEntity<byte[]> plain = body.toResponse(request("gzip;q=0"));
+
+        // Then - Each gets its variant, both vary on the accepted encodings
+        assertEquals("gzip", compressed.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertArrayEquals(body.getJson(),
+                StreamUtils.copyToByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed.getBody()))));
+        assertNull(plain.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertSame(body.getJson(), plain.getBody());
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, plain.getHeaders().getFirst(HttpHeaders.VARY));
+    }
+
+    @Test
+    void toResponse_ShouldWritePlainJson_BelowTheGzipThreshold() {
+        // Given - A body below the gzip threshold
+        ResponseBodyCache.Body body = responseBodyCache.get("teacher:1", "\"a\"", () -> load("D"));
+
+        // When - It is written to a client that accepts gzip
+        ResponseEntity<byte[]> response = body.toResponse(request("gzip"));
+
+        // Then - No compressed variant was kept, the plain body is written
+        assertNull(body.getGzip());
+        assertSame(body.getJson(), response.getBody());
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeaders().getFirst(HttpHeaders.VARY));
+    }
+
+    @Test
+    void checkNotModified_ShouldTagTheGzipRepresentationApart() {
+        // Given - A client that accepts gzip and one that does not, neither holding the resource
+        ServletWebRequest compressed = conditionalRequest("gzip", null);
+        ServletWebRequest plain = conditionalRequest(null, null);
+
+        // When - Both are checked against the same version
+        boolean compressedNotModified = ResponseBodyCache.checkNotModified(compressed, "\"a\"", -1);
+        boolean plainNotModified = ResponseBodyCache.checkNotModified(plain, "\"a\"", -1);
+
+        // Then - Both get the body, each with the strong tag of its own representation
+        assertFalse(compressedNotModified);
+        assertFalse(plainNotModified);
+        assertEquals("\"a-gzip\"", compressed.getResponse().getHeader(HttpHeaders.ETAG));
+        assertEquals("\"a\"", plain.getResponse().getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void checkNotModified_ShouldAcceptEitherFormOfTheCurrentTag() {
+        // Given - Clients holding the current version in the other encoding than the one they now accept,
+        // and a client holding an older version
+        ServletWebRequest nowCompressed = conditionalRequest("gzip", "\"a\"");
+        ServletWebRequest nowPlain = conditionalRequest("identity", "W/\"a-gzip\"");
+        ServletWebRequest outdated = conditionalRequest("gzip", "\"b-gzip\", \"b\"");
+
+        // When - They are checked against the current version
+        // Then - The current version is not sent again, whatever its form; the older one is replaced
+        assertTrue(ResponseBodyCache.checkNotModified(nowCompressed, "\"a\"", -1));
+        assertEquals("\"a\"", nowCompressed.getResponse().getHeader(HttpHeaders.ETAG));
+        assertTrue(ResponseBodyCache.checkNotModified(nowPlain, "\"a\"", -1));
+        assertEquals("\"a-gzip\"", nowPlain.getResponse().getHeader(HttpHeaders.ETAG));
+        assertFalse(ResponseBodyCache.checkNotModified(outdated, "\"a\"", -1));
+        assertEquals("\"a-gzip\"", outdated.getResponse().getHeader(HttpHeaders.ETAG));
+    }
+}
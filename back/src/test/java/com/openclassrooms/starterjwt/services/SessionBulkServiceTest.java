@@ -0,0 +1,116 @@
+package com.openclassrooms.starterjwt.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.starterjwt.dto.SessionImportReportDto;
+import com.openclassrooms.starterjwt.repository.TeacherRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import javax.validation.Validation;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SessionBulkServiceTest {
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private TeacherRepository teacherRepository;
+
+    @Mock
+    private SessionListSnapshot sessionListSnapshot;
+
+    private SessionBulkService sessionBulkService;
+
+    @BeforeEach
+    void setUp() {
+        sessionBulkService = new SessionBulkService(dataSource, transactionManager, teacherRepository,
+                new ObjectMapper(), Validation.buildDefaultValidatorFactory().getValidator(), sessionListSnapshot,
+                500, 1000);
+    }
+
+    private static InputStream json(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void importSessions_ShouldReportEachInvalidItemByPosition() throws IOException {
+        // Given - Items that are not objects, unreadable, invalid, booked, or taught by an unknown teacher
+        when(teacherRepository.existsById(9L)).thenReturn(false);
+        String items = "[42,"
+                + "{\"name\":\"Flow\",\"date\":\"tomorrow\",\"teacher_id\":9,\"description\":\"d\"},"
+                + "{\"name\":\" \",\"date\":0,\"teacher_id\":9,\"description\":\"d\"},"
+                + "{\"name\":\"Flow\",\"date\":0,\"teacher_id\":9,\"description\":\"d\",\"users\":[1]},"
+                + "{\"name\":\"Flow\",\"date\":0,\"teacher_id\":9,\"description\":\"d\"},"
+                + "{\"name\":\"Flow\",\"date\":0,\"teacher_id\":9,\"description\":\"d\"}]";
+
+        // When - The array is imported
+        SessionImportReportDto report = sessionBulkService.importSessions(json(items));
+
+        // Then - Every item is refused with its own reason, nothing is written and the teacher is looked up once
+        assertThat(report.getImported()).isZero();
+        assertThat(report.getFailed()).isEqualTo(6);
+        assertThat(report.getErrors()).extracting(SessionImportReportDto.ItemError::getIndex)
+                .containsExactly(0, 1, 2, 3, 4, 5);
+        assertThat(report.getErrors().get(0).getMessage()).isEqualTo("Expected a session object");
+        assertThat(report.getErrors().get(1).getMessage()).startsWith("Unreadable session");
+        assertThat(report.getErrors().get(2).getMessage()).startsWith("name ");
+        assertThat(report.getErrors().get(3).getMessage()).startsWith("Participants cannot be imported");
+        assertThat(report.getErrors().get(4).getMessage()).isEqualTo("Unknown teacher 9");
+        verify(teacherRepository, times(1)).existsById(9L);
+        verifyNoInteractions(dataSource);
+    }
+
+    @Test
+    void importSessions_ShouldStopAtMalformedJson() throws IOException {
+        // When - The array is cut in the middle of its second item
+        SessionImportReportDto report = sessionBulkService.importSessions(json("[17, {\"name\":"));
+
+        // Then - Both items are reported and the import stops there
+        assertThat(report.getFailed()).isEqualTo(2);
+        assertThat(report.getErrors().get(1).getIndex()).isEqualTo(1);
+        assertThat(report.getErrors().get(1).getMessage()).startsWith("Malformed JSON");
+    }
+
+    @Test
+    void importSessions_ShouldRefuseAnythingButAnArray() throws IOException {
+        // When - A single session object is sent
+        SessionImportReportDto report = sessionBulkService.importSessions(json("{\"name\":\"Flow\"}"));
+
+        // Then - The import is refused as a whole
+        assertThat(report.getFailed()).isEqualTo(1);
+        assertThat(report.getErrors().get(0).getMessage()).isEqualTo("Expected a JSON array of sessions");
+    }
+
+    @Test
+    void importSessions_ShouldCapTheDetailedErrors() throws IOException {
+        // Given - More invalid items than the report details
+        StringBuilder items = new StringBuilder("[0");
+        for (int i = 1; i < SessionBulkService.MAX_REPORTED_ERRORS + 50; i++) {
+            items.append(',').append(i);
+        }
+        items.append(']');
+
+        // When - The array is imported
+        SessionImportReportDto report = sessionBulkService.importSessions(json(items.toString()));
+
+        // Then - Every failure is counted but only the first ones are detailed
+        assertThat(report.getFailed()).isEqualTo(SessionBulkService.MAX_REPORTED_ERRORS + 50);
+        assertThat(report.getErrors()).hasSize(SessionBulkService.MAX_REPORTED_ERRORS);
+    }
+}
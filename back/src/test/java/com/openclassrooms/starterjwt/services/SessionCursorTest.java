@@ -0,0 +1,38 @@
+package com.openclassrooms.starterjwt.services;
+
+import com.openclassrooms.starterjwt.exception.BadRequestException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionCursorTest {
+
+    @Test
+    void testEncodeAndParse_RoundTrip() {
+        // Given - A cursor positioned on a session
+        SessionCursor cursor = new SessionCursor(new Date(1_700_000_000_123L), 42L);
+
+        // When - The cursor is encoded and parsed back
+        SessionCursor parsed = SessionCursor.parse(cursor.encode());
+
+        // Then - The same position is restored
+        assertEquals(cursor.getDate(), parsed.getDate());
+        assertEquals(42L, parsed.getId());
+    }
+
+    @Test
+    void testParse_NullCursor_ReturnsNull() {
+        // When / Then - No cursor means the first page
+        assertNull(SessionCursor.parse(null));
+    }
+
+    @Test
+    void testParse_TamperedCursor_ThrowsBadRequest() {
+        // When / Then - Cursors that do not decode to a position are refused
+        assertThrows(BadRequestException.class, () -> SessionCursor.parse("not a cursor"));
+        assertThrows(BadRequestException.class, () -> SessionCursor.parse("YWJj"));
+        assertThrows(BadRequestException.class, () -> SessionCursor.parse("YTpi"));
+    }
+}
@@ -0,0 +1,180 @@
+package com.openclassrooms.starterjwt.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.starterjwt.dto.ResourceVersion;
+import com.openclassrooms.starterjwt.dto.SessionDto;
+import com.openclassrooms.starterjwt.repository.SessionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SessionListSnapshotTest {
+
+    @Mock
+    private SessionRepository sessionRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private SessionListSnapshot sessionListSnapshot;
+
+    private ResourceVersion version;
+
+    @BeforeEach
+    void setUp() {
+        sessionListSnapshot = new SessionListSnapshot(sessionRepository, objectMapper, transactionManager,
+                new SimpleMeterRegistry(), true, 50, 60_000);
+
+        // Given - One session with two participants is stored
+        version = new ResourceVersion(1L, 4L, LocalDateTime.of(2024, 1, 15, 10, 0));
+        SessionDto session = new SessionDto(1L, "Yoga", new Date(0L), 2L, "Morning flow", 10, 4L, null, null);
+        List<Object[]> participants = new ArrayList<>();
+        participants.add(new Object[]{1L, 5L});
+        participants.add(new Object[]{1L, 6L});
+        lenient().when(sessionRepository.findCollectionVersion()).thenReturn(version);
+        lenient().when(sessionRepository.findAllDtos()).thenReturn(Collections.singletonList(session));
+        lenient().when(sessionRepository.findAllParticipantIds()).thenReturn(participants);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionListSnapshot.destroy();
+    }
+
+    @Test
+    void rebuild_ShouldEncodeTheListWithTheCollectionTag() throws Exception {
+        // When - The list is rebuilt
+        sessionListSnapshot.rebuild();
+
+        // Then - The snapshot holds the sessions with their participants, tagged like the collection
+        SessionListSnapshot.Snapshot snapshot = sessionListSnapshot.current();
+        assertNotNull(snapshot);
+        assertEquals(version.getETag(), snapshot.getETag());
+        SessionDto[] sessions = objectMapper.readValue(snapshot.getBody(), SessionDto[].class);
+        assertEquals(1, sessions.length);
+        assertEquals("Yoga", sessions[0].getName());
+        assertEquals(Arrays.asList(5L, 6L), sessions[0].getUsers());
+    }
+
+    @Test
+    void rebuild_ShouldDropTheSnapshot_WhenTheDatabaseFails() {
+        // Given - A snapshot was built, then the database becomes unavailable
+        sessionListSnapshot.rebuild();
+        when(sessionRepository.findAllDtos()).thenThrow(new DataAccessResourceFailureException("database down"));
+
+        // When - The list is rebuilt again
+        // Then - The rebuild does not fail, and the stale list is no longer served
+        assertDoesNotThrow(() -> sessionListSnapshot.rebuild());
+        assertNull(sessionListSnapshot.current());
+    }
+
+    @Test
+    void current_ShouldBeNull_WhenNotConfirmedWithinTheBound() {
+        // Given - A snapshot with a staleness bound of 100 ms, on a clock driven by the test
+        AtomicLong clock = new AtomicLong();
+        SessionListSnapshot shortLived = new SessionListSnapshot(sessionRepository, objectMapper, transactionManager,
+                new SimpleMeterRegistry(), true, 50, 100, clock::get);
+        shortLived.rebuild();
+        shortLived.destroy();
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertNotNull(shortLived.current());
+
+        // When - The bound passes without the snapshot being checked
+        clock.addAndGet(1);
+
+        // Then - It is no longer served, readers go to the database
+        assertNull(shortLived.current());
+    }
+
+    @Test
+    void verify_ShouldConfirmTheSnapshot_WhenTheTagIsUnchanged() {
+        // Given - A snapshot with a staleness bound of 100 ms, almost reached
+        AtomicLong clock = new AtomicLong();
+        SessionListSnapshot shortLived = new SessionListSnapshot(sessionRepository, objectMapper, transactionManager,
+                new SimpleMeterRegistry(), true, 50, 100, clock::get);
+        shortLived.rebuild();
+        shortLived.destroy();
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(80));
+
+        // When - The collection still has the snapshot's tag when checked, and the bound passes after the build
+        shortLived.verify();
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(40));
+
+        // Then - The snapshot is still served and was not rebuilt
+        assertNotNull(shortLived.current());
+        verify(sessionRepository, times(1)).findAllDtos();
+    }
+
+    @Test
+    void verify_ShouldRebuild_WhenAnotherInstanceChangedTheList() throws Exception {
+        // Given - A snapshot was built, then a session was booked through another instance
+        sessionListSnapshot.rebuild();
+        ResourceVersion changed = new ResourceVersion(1L, 5L, LocalDateTime.of(2024, 1, 15, 10, 5));
+        when(sessionRepository.findCollectionVersion()).thenReturn(changed);
+
+        // When - The snapshot is checked
+        sessionListSnapshot.verify();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!changed.getETag().equals(sessionListSnapshot.current().getETag()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // Then - The list is rebuilt with the new tag
+        assertEquals(changed.getETag(), sessionListSnapshot.current().getETag());
+        verify(sessionRepository, times(2)).findAllDtos();
+    }
+
+    @Test
+    void invalidate_ShouldShareOneRebuild_BetweenCloseWrites() throws Exception {
+        // When - Three writes invalidate the list within the debounce delay
+        sessionListSnapshot.invalidate();
+        sessionListSnapshot.invalidate();
+        sessionListSnapshot.invalidate();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (sessionListSnapshot.current() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+
+        // Then - The list was read once, in the background
+        assertNotNull(sessionListSnapshot.current());
+        verify(sessionRepository, times(1)).findAllDtos();
+    }
+
+    @Test
+    void invalidate_ShouldNotRebuild_WhenDisabled() throws Exception {
+        // Given - The snapshot is disabled
+        SessionListSnapshot disabled = new SessionListSnapshot(sessionRepository, objectMapper, transactionManager,
+                new SimpleMeterRegistry(), false, 0, 60_000);
+
+        // When - A write invalidates the list
+        disabled.invalidate();
+        Thread.sleep(50);
+        disabled.destroy();
+
+        // Then - Nothing is read and readers keep going to the database
+        assertNull(disabled.current());
+        verifyNoInteractions(sessionRepository);
+    }
+}
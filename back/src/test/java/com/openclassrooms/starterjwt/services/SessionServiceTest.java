@@ -1,24 +1,43 @@
 package com.openclassrooms.starterjwt.services;
 
+import com.openclassrooms.starterjwt.dto.SessionDto;
+import com.openclassrooms.starterjwt.dto.SessionPatchDto;
 import com.openclassrooms.starterjwt.exception.BadRequestException;
+import com.openclassrooms.starterjwt.exception.ConflictException;
 import com.openclassrooms.starterjwt.exception.NotFoundException;
 import com.openclassrooms.starterjwt.models.Session;
 import com.openclassrooms.starterjwt.models.User;
+import com.openclassrooms.starterjwt.models.WaitlistEntry;
 import com.openclassrooms.starterjwt.repository.SessionRepository;
+import com.openclassrooms.starterjwt.repository.TeacherRepository;
 import com.openclassrooms.starterjwt.repository.UserRepository;
+import com.openclassrooms.starterjwt.repository.WaitlistRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -28,6 +47,20 @@ public class SessionServiceTest {
     private SessionRepository sessionRepository;
     @Mock
     private UserRepository userRepository;
+    @Mock
+    private TeacherRepository teacherRepository;
+    @Mock
+    private WaitlistRepository waitlistRepository;
+    @Mock
+    private SessionParticipantsCache sessionParticipantsCache;
+
+    @Mock
+    private SessionListSnapshot sessionListSnapshot;
+
+    @Mock
+    private ResponseBodyCache responseBodyCache;
+    @Mock
+    private PlatformTransactionManager transactionManager;
 
     @InjectMocks
     private SessionService sessionService;
@@ -54,10 +87,39 @@ public class SessionServiceTest {
         // When - The service's create method is called
         Session result = sessionService.create(session);
 
-        // Then - The response should contain the created session
+        // Then - The response should contain the created session, and the session list is rebuilt
         assertNotNull(result);
         assertEquals(session.getId(), result.getId());
         verify(sessionRepository, times(1)).save(session);
+        verify(sessionListSnapshot, times(1)).invalidate();
+    }
+
+    @Test
+    void testCreate_CountsParticipants() {
+        // Given - A session created with two participants
+        session.setCapacity(5);
+        session.getUsers().add(user);
+        session.getUsers().add(new User().setId(2L));
+        when(sessionRepository.save(session)).thenReturn(session);
+
+        // When - The service's create method is called
+        Session result = sessionService.create(session);
+
+        // Then - The participant counter used for booking matches the participants
+        assertEquals(2, result.getParticipantCount());
+    }
+
+    @Test
+    void testCreate_ParticipantsAboveCapacity() {
+        // Given - A session with more participants than seats
+        session.setCapacity(1);
+        session.getUsers().add(user);
+        session.getUsers().add(new User().setId(2L));
+
+        // When - The service's create method is called
+        // Then - A BadRequestException should be thrown and nothing is saved
+        assertThrows(BadRequestException.class, () -> sessionService.create(session));
+        verify(sessionRepository, never()).save(any());
     }
 
     @Test
@@ -68,96 +130,403 @@ public class SessionServiceTest {
         // When - The service's delete method is called
         sessionService.delete(1L);
 
-        // Then - The repository's deleteById method should be called once
+        // Then - The repository's deleteById method should be called once and the waitlist dropped
         verify(sessionRepository, times(1)).deleteById(1L);
+        verify(waitlistRepository, times(1)).removeSession(1L);
+    }
+
+    private SessionDto sessionDto(Long id) {
+        return new SessionDto(id, "Session " + id, new Date(), 3L, "Description", null, null, null, null);
+    }
+
+    private WaitlistEntry waitlistEntry(Long id, Long userId) {
+        return WaitlistEntry.builder().id(id).sessionId(1L).userId(userId).build();
     }
 
     @Test
     void testFindAll() {
-        // Given - The repository returns a list of sessions
-        List<Session> sessions = Arrays.asList(session);
-        when(sessionRepository.findAll()).thenReturn(sessions);
+        // Given - The projections return two sessions and the participants of the first one
+        when(sessionRepository.findAllDtos()).thenReturn(Arrays.asList(sessionDto(1L), sessionDto(2L)));
+        when(sessionRepository.findAllParticipantIds()).thenReturn(Arrays.asList(
+                new Object[]{BigInteger.valueOf(1), BigInteger.valueOf(10)},
+                new Object[]{1, 11}));
 
         // When - The service's findAll method is called
-        List<Session> result = sessionService.findAll();
+        List<SessionDto> result = sessionService.findAll();
+
+        // Then - Each session carries its participant ids, without loading any entity
+        assertEquals(2, result.size());
+        assertEquals(Arrays.asList(10L, 11L), result.get(0).getUsers());
+        assertEquals(Collections.emptyList(), result.get(1).getUsers());
+        verify(sessionRepository, never()).findAll();
+    }
 
-        // Then - The response should contain the expected session list
-        assertFalse(result.isEmpty());
-        assertEquals(1, result.size());
-        verify(sessionRepository, times(1)).findAll();
+    @Test
+    void testFindPage_FirstPage_ReadsOneExtraRowToDetectNextPage() {
+        // Given - The index returns one id more than the requested page size
+        when(sessionRepository.findPageIds(any(Date.class), any(Date.class), eq(PageRequest.of(0, 3))))
+                .thenReturn(Arrays.asList(1L, 2L, 3L));
+        when(sessionRepository.findDtosByIdIn(Arrays.asList(1L, 2L)))
+                .thenReturn(Arrays.asList(sessionDto(1L), sessionDto(2L)));
+        when(sessionRepository.findParticipantIds(Arrays.asList(1L, 2L)))
+                .thenReturn(Collections.singletonList(new Object[]{2L, 20L}));
+
+        // When - A page of two sessions is requested
+        Slice<SessionDto> page = sessionService.findPage(null, null, null, 2);
+
+        // Then - Only the two sessions of the page are read and a next page is announced
+        assertEquals(2, page.getNumberOfElements());
+        assertEquals(Collections.singletonList(20L), page.getContent().get(1).getUsers());
+        assertTrue(page.hasNext());
+    }
+
+    @Test
+    void testFindPage_AfterCursor_SeeksPastCursorWithinRange() {
+        // Given - A cursor, a date range and a repository returning the last sessions
+        Date from = new Date(1_600_000_000_000L);
+        Date to = new Date(1_700_000_000_000L);
+        SessionCursor cursor = new SessionCursor(new Date(1_650_000_000_000L), 7L);
+        when(sessionRepository.findPageIdsAfter(from, to, cursor.getDate(), 7L,
+                PageRequest.of(0, SessionService.DEFAULT_PAGE_SIZE + 1)))
+                .thenReturn(Arrays.asList(8L));
+        when(sessionRepository.findDtosByIdIn(Arrays.asList(8L))).thenReturn(Arrays.asList(sessionDto(8L)));
+        when(sessionRepository.findParticipantIds(Arrays.asList(8L))).thenReturn(new ArrayList<>());
+
+        // When - The page after the cursor is requested with the default size
+        Slice<SessionDto> page = sessionService.findPage(from, to, cursor, null);
+
+        // Then - The remaining session is returned without a next page
+        assertEquals(1, page.getNumberOfElements());
+        assertFalse(page.hasNext());
+    }
+
+    @Test
+    void testFindPage_ClampsSizeAndRejectsEmptyPages() {
+        // Given - The index returns no session
+        when(sessionRepository.findPageIds(any(Date.class), any(Date.class), any(Pageable.class)))
+                .thenReturn(new ArrayList<>());
+
+        // When - An oversized page is requested
+        Slice<SessionDto> page = sessionService.findPage(null, null, null, 10_000);
+
+        // Then - The page size is capped, no session is read and a page size below one is refused
+        assertFalse(page.hasContent());
+        verify(sessionRepository).findPageIds(any(Date.class), any(Date.class),
+                eq(PageRequest.of(0, SessionService.MAX_PAGE_SIZE + 1)));
+        verify(sessionRepository, never()).findDtosByIdIn(any());
+        assertThrows(BadRequestException.class, () -> sessionService.findPage(null, null, null, 0));
     }
 
     @Test
     void testGetById_Found() {
-        // Given - The repository returns the expected session when requested
-        when(sessionRepository.findById(1L)).thenReturn(Optional.of(session));
+        // Given - The projection returns the session and its participants
+        when(sessionRepository.findDtoById(1L)).thenReturn(Optional.of(sessionDto(1L)));
+        when(sessionRepository.findParticipantIds(Collections.singletonList(1L)))
+                .thenReturn(Collections.singletonList(new Object[]{1L, 5L}));
 
         // When - The service's getById method is called
-        Session result = sessionService.getById(1L);
+        SessionDto result = sessionService.getById(1L);
 
         // Then - The response should contain the expected session
         assertNotNull(result);
-        assertEquals(session.getId(), result.getId());
-        verify(sessionRepository, times(1)).findById(1L);
+        assertEquals(1L, result.getId());
+        assertEquals(3L, result.getTeacher_id());
+        assertEquals(Collections.singletonList(5L), result.getUsers());
+        verify(sessionRepository, times(1)).findDtoById(1L);
     }
 
     @Test
     void testGetById_NotFound() {
         // Given - The repository returns empty for a non-existent session
-        when(sessionRepository.findById(2L)).thenReturn(Optional.empty());
+        when(sessionRepository.findDtoById(2L)).thenReturn(Optional.empty());
 
         // When - The service's getById method is called
-        Session result = sessionService.getById(2L);
+        SessionDto result = sessionService.getById(2L);
 
-        // Then - The response should be null
+        // Then - The response should be null and participants are not read
         assertNull(result);
-        verify(sessionRepository, times(1)).findById(2L);
+        verify(sessionRepository, times(1)).findDtoById(2L);
+        verify(sessionRepository, never()).findParticipantIds(any());
     }
 
     @Test
     void testUpdate() {
-        // Given - The repository will successfully update the session
+        // Given - The repository will successfully update the session, sent without a version
+        when(sessionRepository.findVersionById(1L)).thenReturn(Optional.of(3L));
         when(sessionRepository.save(session)).thenReturn(session);
 
         // When - The service's update method is called
         Session updatedSession = sessionService.update(1L, session);
 
-        // Then - The response should contain the updated session
+        // Then - The response should contain the updated session, checked against the current version
         assertNotNull(updatedSession);
         assertEquals(1L, updatedSession.getId());
+        assertEquals(3L, updatedSession.getVersion());
         verify(sessionRepository, times(1)).save(session);
     }
 
     @Test
-    void testParticipate_Success() {
-        // Given - The repository returns the session and user, and saves successfully
-        when(sessionRepository.findById(1L)).thenReturn(Optional.of(session));
-        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+    void testUpdate_KeepsTheVersionTheClientRead() {
+        // Given - The client sends the version it edited, which is still the current one
+        session.setVersion(2L);
+        when(sessionRepository.findVersionById(1L)).thenReturn(Optional.of(2L));
         when(sessionRepository.save(session)).thenReturn(session);
 
+        // When - The service's update method is called
+        Session updatedSession = sessionService.update(1L, session);
+
+        // Then - That version is the one checked on save
+        assertEquals(2L, updatedSession.getVersion());
+    }
+
+    @Test
+    void testUpdate_StaleVersion() {
+        // Given - The client edited version 2 and the session has moved on to version 3
+        session.setVersion(2L);
+        when(sessionRepository.findVersionById(1L)).thenReturn(Optional.of(3L));
+
+        // When - The service's update method is called
+        // Then - The edit is refused as a conflict and nothing is saved
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> sessionService.update(1L, session));
+        verify(sessionRepository, never()).save(any());
+        verify(sessionListSnapshot, never()).invalidate();
+    }
+
+    @Test
+    void testUpdate_UnknownIdWithVersion() {
+        // Given - A client sends a version for a session that does not exist
+        session.setVersion(2L);
+        when(sessionRepository.findVersionById(1L)).thenReturn(Optional.empty());
+
+        // When - The service's update method is called
+        // Then - A NotFoundException should be thrown and no session is inserted
+        assertThrows(NotFoundException.class, () -> sessionService.update(1L, session));
+        verify(sessionRepository, never()).save(any());
+    }
+
+    @Test
+    void testUpdate_SessionNotFound() {
+        // Given - The session does not exist
+        when(sessionRepository.findVersionById(1L)).thenReturn(Optional.empty());
+
+        // When - The service's update method is called
+        // Then - A NotFoundException should be thrown and nothing is saved
+        assertThrows(NotFoundException.class, () -> sessionService.update(1L, session));
+        verify(sessionRepository, never()).save(any());
+    }
+
+    @Test
+    void testPatch_AppliesOnlyGivenFields() {
+        // Given - A stored session and a patch that only renames it
+        session.setName("Morning flow").setDescription("Gentle start").setVersion(4L);
+        when(sessionRepository.findById(1L)).thenReturn(Optional.of(session));
+        SessionPatchDto patch = new SessionPatchDto();
+        patch.setName("Evening flow");
+
+        // When - The service's patch method is called
+        sessionService.patch(1L, patch);
+
+        // Then - Only the name changes, the participants are neither read nor written and the cached copies go
+        assertEquals("Evening flow", session.getName());
+        assertEquals("Gentle start", session.getDescription());
+        verify(sessionRepository, never()).findParticipantIds(any());
+        verify(sessionRepository, never()).addParticipant(any(), any());
+        verify(sessionRepository, never()).removeParticipant(any(), any());
+        verify(sessionRepository, never()).save(any());
+        verify(sessionListSnapshot, times(1)).invalidate();
+        verify(responseBodyCache, times(1)).evict(ResponseBodyCache.key(ResponseBodyCache.SESSION, 1L));
+    }
+
+    @Test
+    void testPatch_WritesOnlyTheParticipantDifference() {
+        // Given - Users 1 and 2 participate, the patch keeps 1 and replaces 2 by 3
+        when(sessionRepository.findParticipantIds(Collections.singletonList(1L)))
+                .thenReturn(Arrays.asList(new Object[]{1L, 1L}, new Object[]{1L, 2L}));
+        when(sessionRepository.findById(1L)).thenReturn(Optional.of(session));
+        when(sessionRepository.addParticipant(1L, 3L)).thenReturn(1);
+        when(sessionRepository.countParticipants(1L)).thenReturn(2);
+        SessionPatchDto patch = new SessionPatchDto();
+        patch.setUsers(Arrays.asList(1L, 3L));
+
+        // When - The service's patch method is called
+        sessionService.patch(1L, patch);
+
+        // Then - One row is deleted, one is inserted and the counter follows
+        verify(sessionRepository, times(1)).removeParticipant(1L, 2L);
+        verify(sessionRepository, times(1)).addParticipant(1L, 3L);
+        verify(sessionRepository, never()).addParticipant(1L, 1L);
+        assertEquals(2, session.getParticipantCount());
+    }
+
+    @Test
+    void testPatch_CountsTheStoredParticipants() {
+        // Given - User 1 participates, the patch adds user 2 while another booking has added user 4
+        when(sessionRepository.findParticipantIds(Collections.singletonList(1L)))
+                .thenReturn(Collections.singletonList(new Object[]{1L, 1L}));
+        when(sessionRepository.findById(1L)).thenReturn(Optional.of(session));
+        when(sessionRepository.addParticipant(1L, 2L)).thenReturn(1);
+        when(sessionRepository.countParticipants(1L)).thenReturn(3);
+        SessionPatchDto patch = new SessionPatchDto();
+        patch.setUsers(Arrays.asList(1L, 2L));
+
+        // When - The service's patch method is called
+        sessionService.patch(1L, patch);
+
+        // Then - The counter is the number of rows in PARTICIPATE, not the size of the patch
+        assertEquals(3, session.getParticipantCount());
+    }
+
+    @Test
+    void testPatch_LeavesParticipantsAlone_WhenListIsUnchanged() {
+        // Given - The patch repeats the current participants
+        when(sessionRepository.findParticipantIds(Collections.singletonList(1L)))
+                .thenReturn(Collections.singletonList(new Object[]{1L, 1L}));
+        when(sessionRepository.findById(1L)).thenReturn(Optional.of(session));
+        SessionPatchDto patch = new SessionPatchDto();
+        patch.setUsers(Collections.singletonList(1L));
+
+        // When - The service's patch method is called
+        sessionService.patch(1L, patch);
+
+        // Then - PARTICIPATE is not written
+        verify(sessionRepository, never()).addParticipant(any(), any());
+        verify(sessionRepository, never()).removeParticipant(any(), any());
+    }
+
+    @Test
+    void testPatch_StaleVersion() {
+        // Given - The session moved on since the client read version 3
+        session.setVersion(4L);
+        when(sessionRepository.findById(1L)).thenReturn(Optional.of(session));
+        SessionPatchDto patch = new SessionPatchDto();
+        patch.setName("Evening flow");
+        patch.setUsers(Collections.singletonList(2L));
+        patch.setVersion(3L);
+
+        // When - The service's patch method is called
+        // Then - An optimistic locking failure should be thrown before the participants are read
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> sessionService.patch(1L, patch));
+        assertNull(session.getName());
+        verify(sessionRepository, never()).findParticipantIds(any());
+        verify(sessionListSnapshot, never()).invalidate();
+        verify(responseBodyCache, never()).evict(any());
+    }
+
+    @Test
+    void testPatch_UnknownTeacher() {
+        // Given - The patch points to a teacher that does not exist
+        when(sessionRepository.findById(1L)).thenReturn(Optional.of(session));
+        when(teacherRepository.existsById(9L)).thenReturn(false);
+        SessionPatchDto patch = new SessionPatchDto();
+        patch.setTeacher_id(9L);
+
+        // When - The service's patch method is called
+        // Then - A BadRequestException should be thrown
+        assertThrows(BadRequestException.class, () -> sessionService.patch(1L, patch));
+    }
+
+    @Test
+    void testPatch_CapacityBelowParticipants() {
+        // Given - Three users participate and the patch lowers the capacity to two
+        session.setParticipantCount(3);
+        when(sessionRepository.findById(1L)).thenReturn(Optional.of(session));
+        SessionPatchDto patch = new SessionPatchDto();
+        patch.setCapacity(2);
+
+        // When - The service's patch method is called
+        // Then - A BadRequestException should be thrown and the cached copies are kept
+        assertThrows(BadRequestException.class, () -> sessionService.patch(1L, patch));
+        verify(sessionListSnapshot, never()).invalidate();
+        verify(responseBodyCache, never()).evict(any());
+    }
+
+    @Test
+    void testPatch_SessionNotFound() {
+        // Given - The session does not exist
+        when(sessionRepository.findById(1L)).thenReturn(Optional.empty());
+
+        // When - The service's patch method is called
+        // Then - A NotFoundException should be thrown
+        assertThrows(NotFoundException.class, () -> sessionService.patch(1L, new SessionPatchDto()));
+    }
+
+    @Test
+    void testParticipate_Success() {
+        // Given - A seat is free and the participation row is inserted
+        when(sessionRepository.claimSeat(1L)).thenReturn(1);
+        when(sessionRepository.addParticipant(1L, 1L)).thenReturn(1);
+
         // When - The service's participate method is called
         sessionService.participate(1L, 1L);
 
-        // Then - The user should be added to the session's user list
-        assertTrue(session.getUsers().contains(user));
-        verify(sessionRepository, times(1)).save(session);
+        // Then - Only the seat claim and the single-row insert are issued, the participants are never loaded
+        verify(sessionRepository, times(1)).claimSeat(1L);
+        verify(sessionRepository, times(1)).addParticipant(1L, 1L);
+        verify(sessionRepository, never()).findById(any());
+        verify(sessionRepository, never()).save(any());
+        verifyNoInteractions(userRepository);
+        verify(sessionListSnapshot, times(1)).invalidate();
+    }
+
+    @Test
+    void testParticipate_RetriesAfterLosingALockRace() {
+        // Given - The first attempt times out waiting for the session row, the second one books
+        when(sessionRepository.claimSeat(1L))
+                .thenThrow(new CannotAcquireLockException("lock timeout"))
+                .thenReturn(1);
+        when(sessionRepository.addParticipant(1L, 1L)).thenReturn(1);
+
+        // When - The service's participate method is called
+        sessionService.participate(1L, 1L);
+
+        // Then - The booking is run again in a new transaction and succeeds
+        verify(sessionRepository, times(2)).claimSeat(1L);
+        verify(transactionManager, times(1)).rollback(any());
+        verify(transactionManager, times(1)).commit(any());
+    }
+
+    @Test
+    void testParticipate_GivesUpAfterMaxAttempts() {
+        // Given - Every attempt loses the race
+        when(sessionRepository.claimSeat(1L)).thenThrow(new CannotAcquireLockException("lock timeout"));
+
+        // When - The service's participate method is called
+        // Then - The failure surfaces once the attempts are exhausted
+        assertThrows(ConcurrencyFailureException.class, () -> sessionService.participate(1L, 1L));
+        verify(sessionRepository, times(3)).claimSeat(1L);
     }
 
     @Test
     void testParticipate_SessionNotFound() {
-        // Given - The repository returns empty for a non-existent session
-        when(sessionRepository.findById(1L)).thenReturn(Optional.empty());
+        // Given - No seat can be claimed because the session does not exist
+        when(sessionRepository.claimSeat(1L)).thenReturn(0);
+        when(sessionRepository.existsById(1L)).thenReturn(false);
 
         // When - The service's participate method is called
         // Then - A NotFoundException should be thrown
         assertThrows(NotFoundException.class, () -> sessionService.participate(1L, 1L));
+        verify(sessionRepository, never()).addParticipant(any(), any());
+        verify(sessionListSnapshot, never()).invalidate();
+    }
+
+    @Test
+    void testParticipate_SessionFull() {
+        // Given - No seat can be claimed although the session exists
+        when(sessionRepository.claimSeat(1L)).thenReturn(0);
+        when(sessionRepository.existsById(1L)).thenReturn(true);
+
+        // When - The service's participate method is called
+        // Then - A ConflictException should be thrown and no participation is added
+        assertThrows(ConflictException.class, () -> sessionService.participate(1L, 1L));
+        verify(sessionRepository, never()).addParticipant(any(), any());
     }
 
     @Test
     void testParticipate_UserNotFound() {
-        // Given - The repository returns the session but no user
-        when(sessionRepository.findById(1L)).thenReturn(Optional.of(session));
-        when(userRepository.findById(1L)).thenReturn(Optional.empty());
+        // Given - A seat is claimed but nothing is inserted because the user does not exist
+        when(sessionRepository.claimSeat(1L)).thenReturn(1);
+        when(sessionRepository.addParticipant(1L, 1L)).thenReturn(0);
+        when(userRepository.existsById(1L)).thenReturn(false);
 
         // When - The service's participate method is called
         // Then - A NotFoundException should be thrown
@@ -166,10 +535,21 @@ public class SessionServiceTest {
 
     @Test
     void testParticipate_AlreadyParticipating() {
-        // Given - The session already contains the user
-        session.getUsers().add(user);
-        when(sessionRepository.findById(1L)).thenReturn(Optional.of(session));
-        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        // Given - A seat is claimed but nothing is inserted although the user exists
+        when(sessionRepository.claimSeat(1L)).thenReturn(1);
+        when(sessionRepository.addParticipant(1L, 1L)).thenReturn(0);
+        when(userRepository.existsById(1L)).thenReturn(true);
+
+        // When - The service's participate method is called
+        // Then - A BadRequestException should be thrown
+        assertThrows(BadRequestException.class, () -> sessionService.participate(1L, 1L));
+    }
+
+    @Test
+    void testParticipate_ConcurrentDuplicate() {
+        // Given - A concurrent insert of the same pair trips the unique constraint
+        when(sessionRepository.claimSeat(1L)).thenReturn(1);
+        when(sessionRepository.addParticipant(1L, 1L)).thenThrow(new DataIntegrityViolationException("uk_participate_session_user"));
 
         // When - The service's participate method is called
         // Then - A BadRequestException should be thrown
@@ -178,36 +558,175 @@ public class SessionServiceTest {
 
     @Test
     void testNoLongerParticipate_Success() {
-        // Given - The repository returns the session with the user already participating
-        session.getUsers().add(user);
-        when(sessionRepository.findById(1L)).thenReturn(Optional.of(session));
-        when(sessionRepository.save(session)).thenReturn(session);
+        // Given - The delete removes the participation row
+        when(sessionRepository.removeParticipant(1L, 1L)).thenReturn(1);
 
         // When - The service's noLongerParticipate method is called
         sessionService.noLongerParticipate(1L, 1L);
 
-        // Then - The user should be removed from the session's user list
-        assertFalse(session.getUsers().contains(user));
-        verify(sessionRepository, times(1)).save(session);
+        // Then - Only the single-row delete and the seat release are issued, nobody is waiting
+        verify(sessionRepository, times(1)).removeParticipant(1L, 1L);
+        verify(sessionRepository, times(1)).releaseSeat(1L);
+        verify(sessionRepository, never()).claimSeat(any());
+        verify(sessionRepository, never()).findById(any());
+        verify(sessionRepository, never()).save(any());
     }
 
     @Test
     void testNoLongerParticipate_SessionNotFound() {
-        // Given - The repository returns empty for a non-existent session
-        when(sessionRepository.findById(1L)).thenReturn(Optional.empty());
+        // Given - Nothing is deleted because the session does not exist
+        when(sessionRepository.removeParticipant(1L, 1L)).thenReturn(0);
+        when(sessionRepository.existsById(1L)).thenReturn(false);
 
         // When - The service's noLongerParticipate method is called
         // Then - A NotFoundException should be thrown
         assertThrows(NotFoundException.class, () -> sessionService.noLongerParticipate(1L, 1L));
+        verify(sessionRepository, never()).releaseSeat(any());
     }
 
     @Test
     void testNoLongerParticipate_UserNotParticipating() {
-        // Given - The repository returns the session without the user participating
-        when(sessionRepository.findById(1L)).thenReturn(Optional.of(session));
+        // Given - Nothing is deleted although the session exists
+        when(sessionRepository.removeParticipant(1L, 1L)).thenReturn(0);
+        when(sessionRepository.existsById(1L)).thenReturn(true);
 
         // When - The service's noLongerParticipate method is called
         // Then - A BadRequestException should be thrown
         assertThrows(BadRequestException.class, () -> sessionService.noLongerParticipate(1L, 1L));
+        verify(sessionRepository, never()).releaseSeat(any());
+    }
+
+    @Test
+    void testNoLongerParticipate_PromotesFirstWaitingUser() {
+        // Given - A participant leaves while user 2 heads the waitlist
+        when(sessionRepository.removeParticipant(1L, 1L)).thenReturn(1);
+        when(waitlistRepository.findFirstBySessionIdOrderById(1L)).thenReturn(Optional.of(waitlistEntry(10L, 2L)));
+        when(sessionRepository.claimSeat(1L)).thenReturn(1);
+        when(waitlistRepository.removeEntry(10L)).thenReturn(1);
+        when(sessionRepository.addParticipant(1L, 2L)).thenReturn(1);
+
+        // When - The service's noLongerParticipate method is called
+        sessionService.noLongerParticipate(1L, 1L);
+
+        // Then - The freed seat goes to user 2 and the rest of the queue is not read
+        verify(sessionRepository, times(1)).addParticipant(1L, 2L);
+        verify(sessionRepository, times(1)).releaseSeat(1L);
+        verify(waitlistRepository, never()).findFirstBySessionIdAndIdGreaterThanOrderById(any(), any());
+    }
+
+    @Test
+    void testNoLongerParticipate_SkipsEntriesAlreadyServed() {
+        // Given - The head of the queue was served by a concurrent promotion, user 3 comes next
+        when(sessionRepository.removeParticipant(1L, 1L)).thenReturn(1);
+        when(waitlistRepository.findFirstBySessionIdOrderById(1L)).thenReturn(Optional.of(waitlistEntry(10L, 2L)));
+        when(waitlistRepository.findFirstBySessionIdAndIdGreaterThanOrderById(1L, 10L))
+                .thenReturn(Optional.of(waitlistEntry(11L, 3L)));
+        when(sessionRepository.claimSeat(1L)).thenReturn(1);
+        when(waitlistRepository.removeEntry(10L)).thenReturn(0);
+        when(waitlistRepository.removeEntry(11L)).thenReturn(1);
+        when(sessionRepository.addParticipant(1L, 3L)).thenReturn(1);
+
+        // When - The service's noLongerParticipate method is called
+        sessionService.noLongerParticipate(1L, 1L);
+
+        // Then - User 3 is promoted
+        verify(sessionRepository, never()).addParticipant(1L, 2L);
+        verify(sessionRepository, times(1)).addParticipant(1L, 3L);
+    }
+
+    @Test
+    void testNoLongerParticipate_ReleasesClaimedSeat_WhenNobodyCanBePromoted() {
+        // Given - The only queued entry was already served
+        when(sessionRepository.removeParticipant(1L, 1L)).thenReturn(1);
+        when(waitlistRepository.findFirstBySessionIdOrderById(1L)).thenReturn(Optional.of(waitlistEntry(10L, 2L)));
+        when(sessionRepository.claimSeat(1L)).thenReturn(1);
+        when(waitlistRepository.removeEntry(10L)).thenReturn(0);
+        when(waitlistRepository.findFirstBySessionIdAndIdGreaterThanOrderById(1L, 10L)).thenReturn(Optional.empty());
+
+        // When - The service's noLongerParticipate method is called
+        sessionService.noLongerParticipate(1L, 1L);
+
+        // Then - The seat claimed for the promotion is given back
+        verify(sessionRepository, never()).addParticipant(any(), eq(2L));
+        verify(sessionRepository, times(2)).releaseSeat(1L);
+    }
+
+    @Test
+    void testJoinWaitlist_Success() {
+        // Given - A full session and a user who does not participate
+        when(sessionRepository.existsById(1L)).thenReturn(true);
+        when(userRepository.existsById(1L)).thenReturn(true);
+        when(sessionRepository.isFull(1L)).thenReturn(true);
+        when(sessionRepository.countParticipant(1L, 1L)).thenReturn(0);
+        when(waitlistRepository.saveAndFlush(any(WaitlistEntry.class)))
+                .thenAnswer(invocation -> invocation.<WaitlistEntry>getArgument(0).setId(10L));
+
+        // When - The service's joinWaitlist method is called
+        sessionService.joinWaitlist(1L, 1L);
+
+        // Then - The entry is persisted for the session and the user
+        verify(waitlistRepository, times(1)).saveAndFlush(argThat(entry ->
+                entry.getSessionId().equals(1L) && entry.getUserId().equals(1L)));
+    }
+
+    @Test
+    void testJoinWaitlist_SessionNotFull() {
+        // Given - A session that still has a free seat
+        when(sessionRepository.existsById(1L)).thenReturn(true);
+        when(userRepository.existsById(1L)).thenReturn(true);
+        when(sessionRepository.isFull(1L)).thenReturn(false);
+
+        // When - The service's joinWaitlist method is called
+        // Then - A BadRequestException should be thrown, the user can book directly
+        assertThrows(BadRequestException.class, () -> sessionService.joinWaitlist(1L, 1L));
+        verify(waitlistRepository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    void testJoinWaitlist_AlreadyWaiting() {
+        // Given - The user is already queued for the full session
+        when(sessionRepository.existsById(1L)).thenReturn(true);
+        when(userRepository.existsById(1L)).thenReturn(true);
+        when(sessionRepository.isFull(1L)).thenReturn(true);
+        when(waitlistRepository.saveAndFlush(any(WaitlistEntry.class)))
+                .thenThrow(new DataIntegrityViolationException("uk_waitlist_session_user"));
+
+        // When - The service's joinWaitlist method is called
+        // Then - A BadRequestException should be thrown
+        assertThrows(BadRequestException.class, () -> sessionService.joinWaitlist(1L, 1L));
+    }
+
+    @Test
+    void testJoinWaitlist_SessionNotFound() {
+        // Given - The session does not exist
+        when(sessionRepository.existsById(1L)).thenReturn(false);
+
+        // When - The service's joinWaitlist method is called
+        // Then - A NotFoundException should be thrown
+        assertThrows(NotFoundException.class, () -> sessionService.joinWaitlist(1L, 1L));
+    }
+
+    @Test
+    void testLeaveWaitlist_Success() {
+        // Given - The user is queued
+        when(waitlistRepository.removeUser(1L, 1L)).thenReturn(1);
+
+        // When - The service's leaveWaitlist method is called
+        sessionService.leaveWaitlist(1L, 1L);
+
+        // Then - The entry leaves the queue without looking the session up
+        verify(waitlistRepository, times(1)).removeUser(1L, 1L);
+        verify(sessionRepository, never()).existsById(any());
+    }
+
+    @Test
+    void testLeaveWaitlist_NotWaiting() {
+        // Given - The session exists but the user is not queued
+        when(waitlistRepository.removeUser(1L, 1L)).thenReturn(0);
+        when(sessionRepository.existsById(1L)).thenReturn(true);
+
+        // When - The service's leaveWaitlist method is called
+        // Then - A BadRequestException should be thrown
+        assertThrows(BadRequestException.class, () -> sessionService.leaveWaitlist(1L, 1L));
     }
 }
@@ -1,15 +1,18 @@
 package com.openclassrooms.starterjwt.services;
 
+import com.openclassrooms.starterjwt.dto.ResourceVersion;
 import com.openclassrooms.starterjwt.models.Teacher;
 import com.openclassrooms.starterjwt.repository.TeacherRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
-import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -23,7 +26,8 @@ class TeacherServiceTest {
     @Mock
     private TeacherRepository teacherRepository;
 
-    @InjectMocks
+    private MeterRegistry meterRegistry;
+
     private TeacherService teacherService;
 
     private Teacher teacher1;
@@ -31,16 +35,21 @@ class TeacherServiceTest {
 
     @BeforeEach
     void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        teacherService = new TeacherService(teacherRepository, meterRegistry, 60_000, 100);
+
         // Given - A test teacher dataset is prepared
         teacher1 = new Teacher();
         teacher1.setId(1L);
         teacher1.setFirstName("John");
         teacher1.setLastName("Doe");
+        teacher1.setUpdatedAt(LocalDateTime.of(2024, 1, 10, 9, 0));
 
         teacher2 = new Teacher();
         teacher2.setId(2L);
         teacher2.setFirstName("Jane");
         teacher2.setLastName("Smith");
+        teacher2.setUpdatedAt(LocalDateTime.of(2024, 2, 10, 9, 0));
     }
 
     @Test
@@ -58,19 +67,39 @@ class TeacherServiceTest {
         verify(teacherRepository, times(1)).findAll();
     }
 
+    @Test
+    void findAll_ShouldBeServedFromCache_AndFillTheTeacherEntries() {
+        // Given - The catalogue was loaded at startup
+        when(teacherRepository.findAll()).thenReturn(Arrays.asList(teacher1, teacher2));
+        teacherService.warmUp();
+
+        // When - The catalogue and a teacher are read
+        List<Teacher> teachers = teacherService.findAll();
+        Teacher teacher = teacherService.findById(2L);
+
+        // Then - Both come from the cache and the repository was read only once
+        assertEquals(2, teachers.size());
+        assertSame(teacher2, teacher);
+        verify(teacherRepository, times(1)).findAll();
+        verify(teacherRepository, never()).findById(anyLong());
+    }
+
     @Test
     void findById_WhenTeacherExists_ShouldReturnTeacher() {
         // Given - The repository returns the expected teacher when requested
         when(teacherRepository.findById(1L)).thenReturn(Optional.of(teacher1));
 
-        // When - The service's findById method is called
+        // When - The service's findById method is called twice
         Teacher foundTeacher = teacherService.findById(1L);
+        teacherService.findById(1L);
 
-        // Then - The response should contain the expected teacher details
+        // Then - The response should contain the expected teacher details, read from the repository once
         assertNotNull(foundTeacher);
         assertEquals(1L, foundTeacher.getId());
         assertEquals("John", foundTeacher.getFirstName());
         verify(teacherRepository, times(1)).findById(1L);
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "teachers").tag("result", "hit")
+                .functionCounter().count());
     }
 
     @Test
@@ -78,11 +107,68 @@ class TeacherServiceTest {
         // Given - The repository returns empty for a non-existent teacher
         when(teacherRepository.findById(99L)).thenReturn(Optional.empty());
 
-        // When - The service's findById method is called
+        // When - The service's findById method is called twice
         Teacher foundTeacher = teacherService.findById(99L);
+        teacherService.findById(99L);
 
-        // Then - The response should be null
+        // Then - The response should be null and unknown ids should not be cached
         assertNull(foundTeacher);
-        verify(teacherRepository, times(1)).findById(99L);
+        verify(teacherRepository, times(2)).findById(99L);
+    }
+
+    @Test
+    void findById_ShouldReloadTheTeacher_OnceOlderThanTheTtl() throws Exception {
+        // Given - A teacher is cached with a short TTL, then changed in the database
+        TeacherService shortLived = new TeacherService(teacherRepository, meterRegistry, 20, 100);
+        Teacher renamed = new Teacher();
+        renamed.setId(1L);
+        renamed.setLastName("Thiercelin");
+        when(teacherRepository.findById(1L)).thenReturn(Optional.of(teacher1), Optional.of(renamed));
+        shortLived.findById(1L);
+
+        // When - The teacher is read again after the TTL
+        Thread.sleep(50);
+        shortLived.findById(1L);
+
+        // Then - It is reloaded in the background and the change is served on the following reads
+        verify(teacherRepository, timeout(1_000).times(2)).findById(1L);
+        long deadline = System.currentTimeMillis() + 1_000;
+        while (!"Thiercelin".equals(shortLived.findById(1L).getLastName()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("Thiercelin", shortLived.findById(1L).getLastName());
+    }
+
+    @Test
+    void warmUp_ShouldNotFail_WhenTheDatabaseIsUnavailable() {
+        // Given - The repository cannot be reached at startup
+        when(teacherRepository.findAll()).thenThrow(new IllegalStateException("database down"));
+
+        // When - The cache is warmed up
+        // Then - Startup goes on
+        assertDoesNotThrow(() -> teacherService.warmUp());
+    }
+
+    @Test
+    void getCollectionVersion_ShouldFollowTheCachedCatalogue() {
+        // Given - The catalogue holds two teachers
+        when(teacherRepository.findAll()).thenReturn(Arrays.asList(teacher1, teacher2));
+
+        // When - The version of the catalogue is read
+        ResourceVersion version = teacherService.getCollectionVersion();
+
+        // Then - It carries the count and the last update of the catalogue
+        assertEquals(new ResourceVersion(2L, teacher2.getUpdatedAt()).getETag(), version.getETag());
+        assertEquals(teacher2.getUpdatedAt(), version.getLastModified());
+    }
+
+    @Test
+    void getVersion_ShouldBeNull_WhenTeacherDoesNotExist() {
+        // Given - The repository returns empty for a non-existent teacher
+        when(teacherRepository.findById(99L)).thenReturn(Optional.empty());
+
+        // When - The version of the teacher is read
+        // Then - There is none
+        assertNull(teacherService.getVersion(99L));
     }
 }
@@ -1,7 +1,11 @@
 package com.openclassrooms.starterjwt.services;
 
+import com.openclassrooms.starterjwt.dto.ResourceVersion;
+import com.openclassrooms.starterjwt.exception.BadRequestException;
 import com.openclassrooms.starterjwt.models.User;
 import com.openclassrooms.starterjwt.repository.UserRepository;
+import com.openclassrooms.starterjwt.security.jwt.UserRevocationList;
+import com.openclassrooms.starterjwt.security.services.UserDetailsServiceImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -10,6 +14,9 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -21,6 +28,15 @@ class UserServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private UserRevocationList userRevocationList;
+
+    @Mock
+    private UserDetailsServiceImpl userDetailsService;
+
+    @Mock
+    private ResponseBodyCache responseBodyCache;
+
     @InjectMocks
     private UserService userService;
 
@@ -63,6 +79,22 @@ class UserServiceTest {
         verify(userRepository, times(1)).findById(99L);
     }
 
+    @Test
+    void getVersion_ShouldReadTheProjection_WithoutLoadingTheUser() {
+        // Given - The repository returns the validators of the user
+        ResourceVersion version = new ResourceVersion(1L, LocalDateTime.of(2024, 1, 10, 9, 0));
+        when(userRepository.findResourceVersionById(1L)).thenReturn(Optional.of(version));
+
+        // When - The service's getVersion method is called, for the user and for an unknown id
+        ResourceVersion found = userService.getVersion(1L);
+        ResourceVersion missing = userService.getVersion(99L);
+
+        // Then - The projection is returned, null for the unknown id, and no user is loaded
+        assertEquals(version.getETag(), found.getETag());
+        assertNull(missing);
+        verify(userRepository, never()).findById(any());
+    }
+
     @Test
     void delete_ShouldCallRepositoryDeleteById() {
         // Given - The repository will successfully delete the user
@@ -72,7 +104,47 @@ class UserServiceTest {
         // When - The service's delete method is called
         userService.delete(userId);
 
-        // Then - The repository's deleteById method should be called once
+        // Then - The repository's deleteById method should be called once and the user forgotten by the caches
         verify(userRepository, times(1)).deleteById(userId);
+        verify(userRevocationList, times(1)).revoke(userId);
+        verify(userDetailsService, times(1)).evictUser(userId);
+        verify(responseBodyCache, times(1)).evict("user:1");
+    }
+
+    @Test
+    void findAllById_ShouldLoadUsersInOneQuery_InRequestedOrder() {
+        // Given - Two existing users returned in a different order by the repository
+        User other = new User();
+        other.setId(2L);
+        when(userRepository.findAllById(anyCollection())).thenReturn(Arrays.asList(other, user));
+
+        // When - The users are resolved by id, with a duplicate id
+        List<User> users = userService.findAllById(Arrays.asList(1L, 2L, 1L));
+
+        // Then - Each user appears once, in the requested order, after a single lookup
+        assertEquals(2, users.size());
+        assertEquals(1L, users.get(0).getId());
+        assertEquals(2L, users.get(1).getId());
+        verify(userRepository, times(1)).findAllById(anyCollection());
+        verify(userRepository, never()).findById(any());
+    }
+
+    @Test
+    void findAllById_WhenAnIdIsUnknown_ShouldThrowBadRequest() {
+        // Given - Only one of the two referenced users exists
+        when(userRepository.findAllById(anyCollection())).thenReturn(Arrays.asList(user));
+
+        // When / Then - The unknown id is rejected
+        assertThrows(BadRequestException.class, () -> userService.findAllById(Arrays.asList(1L, 99L)));
+    }
+
+    @Test
+    void findAllById_WhenNoIds_ShouldNotQuery() {
+        // When - No users are referenced
+        List<User> users = userService.findAllById(null);
+
+        // Then - The result is empty and the repository is not called
+        assertTrue(users.isEmpty());
+        verifyNoInteractions(userRepository);
     }
 }
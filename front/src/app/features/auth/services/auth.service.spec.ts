@@ -85,4 +85,30 @@ describe('AuthService', () => {
     expect(req.request.body).toEqual(mockRequest);
     req.flush(mockResponse);
   });
+
+  it('should call refresh and return new session information', () => {
+    // Mock response data carrying the new token pair
+    const mockResponse: SessionInformation = {
+      token: 'def456',
+      refreshToken: 'refresh456',
+      id: 1,
+      type: 'Bearer',
+      username: '',
+      firstName: '',
+      lastName: '',
+      admin: true,
+    };
+
+    // Call the refresh method and expect the new session information
+    service.refresh('refresh123').subscribe((response) => {
+      expect(response).toEqual(mockResponse);
+    });
+
+    // Verify that the correct HTTP method and endpoint are used
+    const req = httpMock.expectOne('api/auth/refresh');
+    expect(req.request.method).toBe('POST');
+    // Ensure the refresh token is sent in the body
+    expect(req.request.body).toEqual({ refreshToken: 'refresh123' });
+    req.flush(mockResponse);
+  });
 });
@@ -1,19 +1,53 @@
-import { HttpHandler, HttpInterceptor, HttpRequest } from "@angular/common/http";
+import { HttpErrorResponse, HttpEvent, HttpHandler, HttpInterceptor, HttpRequest } from "@angular/common/http";
 import { Injectable } from "@angular/core";
+import { catchError, finalize, Observable, shareReplay, switchMap, tap, throwError } from 'rxjs';
+import { AuthService } from '../features/auth/services/auth.service';
+import { SessionInformation } from '../interfaces/sessionInformation.interface';
 import { SessionService } from '../services/session.service';
 
 @Injectable({ providedIn: 'root' })
 export class JwtInterceptor implements HttpInterceptor {
-  constructor(private sessionService: SessionService) {}
+  private refreshing: Observable<SessionInformation> | undefined;
 
-  public intercept(request: HttpRequest<any>, next: HttpHandler) {
-    if (this.sessionService.isLogged) {
-      request = request.clone({
-        setHeaders: {
-          Authorization: `Bearer ${this.sessionService.sessionInformation!.token}`,
-        },
-      });
+  constructor(private sessionService: SessionService, private authService: AuthService) {}
+
+  public intercept(request: HttpRequest<any>, next: HttpHandler): Observable<HttpEvent<any>> {
+    return next.handle(this.withToken(request)).pipe(
+      catchError((error: unknown) => {
+        if (!(error instanceof HttpErrorResponse) || error.status !== 401
+          || request.url.startsWith('api/auth/') || !this.sessionService.sessionInformation?.refreshToken) {
+          return throwError(() => error);
+        }
+        return this.refresh().pipe(switchMap(() => next.handle(this.withToken(request))));
+      })
+    );
+  }
+
+  private withToken(request: HttpRequest<any>): HttpRequest<any> {
+    if (!this.sessionService.isLogged) {
+      return request;
+    }
+    return request.clone({
+      setHeaders: {
+        Authorization: `Bearer ${this.sessionService.sessionInformation!.token}`,
+      },
+    });
+  }
+
+  // Access tokens expire after a few minutes: the requests rejected at the same time share one refresh,
+  // and the user is logged out once the refresh token is refused too.
+  private refresh(): Observable<SessionInformation> {
+    if (!this.refreshing) {
+      this.refreshing = this.authService.refresh(this.sessionService.sessionInformation!.refreshToken!).pipe(
+        tap((user: SessionInformation) => this.sessionService.logIn(user)),
+        catchError((error: unknown) => {
+          this.sessionService.logOut();
+          return throwError(() => error);
+        }),
+        finalize(() => this.refreshing = undefined),
+        shareReplay(1)
+      );
     }
-    return next.handle(request);
+    return this.refreshing;
   }
 }
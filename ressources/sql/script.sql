@@ -12,6 +12,9 @@ CREATE TABLE `SESSIONS` (
   `description` VARCHAR(2000),
   `date` TIMESTAMP,
   `teacher_id` int,
+  `capacity` INT,
+  `participant_count` INT NOT NULL DEFAULT 0,
+  `version` BIGINT NOT NULL DEFAULT 0,
   `created_at` TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
   `updated_at` DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
 );
@@ -32,9 +35,32 @@ CREATE TABLE `PARTICIPATE` (
   `session_id` INT
 );
 
+CREATE TABLE `WAITLIST` (
+  `id` INT PRIMARY KEY AUTO_INCREMENT,
+  `session_id` INT NOT NULL,
+  `user_id` INT NOT NULL,
+  `created_at` TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE `USER_REVOCATIONS` (
+  `user_id` INT PRIMARY KEY,
+  `revoked_at` DATETIME(6) NOT NULL
+);
+
+ALTER TABLE `PARTICIPATE` ADD CONSTRAINT `uk_participate_session_user` UNIQUE (`session_id`, `user_id`);
+
+CREATE INDEX `idx_sessions_date_id` ON `SESSIONS` (`date`, `id`);
+
+ALTER TABLE `WAITLIST` ADD CONSTRAINT `uk_waitlist_session_user` UNIQUE (`session_id`, `user_id`);
+CREATE INDEX `idx_waitlist_session_id` ON `WAITLIST` (`session_id`, `id`);
+
+CREATE INDEX `idx_user_revocations_revoked_at` ON `USER_REVOCATIONS` (`revoked_at`);
+
 ALTER TABLE `SESSIONS` ADD FOREIGN KEY (`teacher_id`) REFERENCES `TEACHERS` (`id`);
 ALTER TABLE `PARTICIPATE` ADD FOREIGN KEY (`user_id`) REFERENCES `USERS` (`id`);
 ALTER TABLE `PARTICIPATE` ADD FOREIGN KEY (`session_id`) REFERENCES `SESSIONS` (`id`);
+ALTER TABLE `WAITLIST` ADD FOREIGN KEY (`user_id`) REFERENCES `USERS` (`id`);
+ALTER TABLE `WAITLIST` ADD FOREIGN KEY (`session_id`) REFERENCES `SESSIONS` (`id`);
 
 INSERT INTO TEACHERS (first_name, last_name)
 VALUES ('Margot', 'DELAHAYE'),